@@ -0,0 +1,45 @@
+package jackanalyzer.bench;
+
+import jackanalyzer.JackAnalyzer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a whole JackAnalyzer run (single threaded) over a copy of a sample program folder,
+ * as bundled and with every class scaled up. The console output is dropped while measuring.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AnalyzerBenchmark {
+    @Param({"Square", "ArrayTest", "ExpressionLessSquare"})
+    public String program;
+
+    @Param({"1", "100"})
+    public int scale;
+
+    String[] arguments;
+    PrintStream console;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        arguments = new String[]{"--jobs", "1", Inputs.scaledProgram(program, scale).getPath()};
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void restore() {
+        System.setOut(console);
+    }
+
+    @Benchmark
+    public void analyze() throws IOException {
+        JackAnalyzer.main(arguments);
+    }
+}
@@ -0,0 +1,108 @@
+package jackanalyzer.bench;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.*;
+import java.util.regex.*;
+
+/**
+ * Inputs shared by the benchmarks: the bundled sample programs, scaled up when needed,
+ * and a channel that discards everything for measuring without output costs.
+ */
+final class Inputs {
+    // Where the subroutine declarations of a class start.
+    private static final Pattern FIRST_SUBROUTINE = Pattern.compile("(?m)^\\s*(constructor|function|method)\\b");
+
+    private Inputs() {
+    }
+
+    /**
+     * @return the folder holding Square/, ArrayTest/ and ExpressionLessSquare/. Set -Djack.samples to override,
+     * by default the current folder or its parent (when running from benchmarks/).
+     */
+    static Path samples() {
+        String configured = System.getProperty("jack.samples");
+        if (configured != null) {
+            return Path.of(configured);
+        }
+        Path here = Path.of("").toAbsolutePath();
+        return Files.isDirectory(here.resolve("Square")) ? here : here.getParent();
+    }
+
+    /**
+     * Writes a sample file with its subroutines repeated, into a temporary folder.
+     * @param sample path of a .jack file relative to samples(), e.g. "Square/Square.jack".
+     * @param scale how many times the subroutines appear.
+     * @return the scaled file, deleted when the JVM exits.
+     */
+    static File scaled(String sample, int scale) throws IOException {
+        Path directory = Files.createTempDirectory("jack-bench");
+        directory.toFile().deleteOnExit();
+        Path source = samples().resolve(sample);
+        return write(directory.resolve(source.getFileName()), scale(Files.readString(source), scale));
+    }
+
+    /**
+     * Copies a sample program folder with every file scaled, into a temporary folder.
+     * @param program a folder under samples(), e.g. "Square".
+     * @param scale how many times the subroutines appear in each file.
+     * @return the folder holding the copies.
+     */
+    static File scaledProgram(String program, int scale) throws IOException {
+        Path directory = Files.createTempDirectory("jack-bench-" + program);
+        directory.toFile().deleteOnExit();
+        try (DirectoryStream<Path> jackFiles = Files.newDirectoryStream(samples().resolve(program), "*.jack")) {
+            for (Path source : jackFiles) {
+                write(directory.resolve(source.getFileName()), scale(Files.readString(source), scale));
+            }
+        }
+        return directory.toFile();
+    }
+
+    /**
+     * Repeats the subroutine declarations of a class. The result is still a valid class,
+     * with the same declarations and comments many times.
+     */
+    static String scale(String source, int scale) {
+        Matcher matcher = FIRST_SUBROUTINE.matcher(source);
+        if (scale <= 1 || !matcher.find()) {
+            return source;
+        }
+        int bodyStart = matcher.start();
+        int bodyEnd = source.lastIndexOf('}'); // Closing brace of the class.
+        StringBuilder scaled = new StringBuilder(source.length() * scale);
+        scaled.append(source, 0, bodyEnd);
+        for (int i = 1; i < scale; i++) {
+            scaled.append(source, bodyStart, bodyEnd);
+        }
+        return scaled.append(source, bodyEnd, source.length()).toString();
+    }
+
+    private static File write(Path file, String content) throws IOException {
+        Files.writeString(file, content);
+        file.toFile().deleteOnExit();
+        return file.toFile();
+    }
+
+    /**
+     * A channel that accepts and drops all bytes, the output of the "null sink" benchmarks.
+     */
+    static final class NullChannel implements WritableByteChannel {
+        @Override
+        public int write(ByteBuffer source) {
+            int length = source.remaining();
+            source.position(source.limit());
+            return length;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package jackanalyzer.bench;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * The JackCorpusGenerator class writes random but grammar-valid Jack classes, for scaling and stress benchmarks.
+ *
+ * How it works:
+ * - Everything is drawn from a SplittableRandom seeded from the settings and the file number,
+ *   so the same settings always produce the same corpus, file by file.
+ * - Each class gets field declarations and then subroutines until it reaches the requested size.
+ * - Statements nest (if / while) and expressions nest (parentheses, array entries, calls, unary terms)
+ *   up to the requested depth. Expressions have up to the requested number of terms.
+ * - Line and block comments, and string constants, appear with the requested frequencies.
+ *
+ * Usage from the command line (defaults in brackets):
+ *   java -cp benchmarks.jar jackanalyzer.bench.JackCorpusGenerator [--seed 42] [--files 1] [--size 64KB]
+ *        [--depth 3] [--expression-length 4] [--comment-density 0.2] [--string-frequency 0.1] <output-directory>
+ */
+public final class JackCorpusGenerator {
+    private static final String[] TYPES = {"int", "char", "boolean"};
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "&", "|", "<", ">", "="};
+    private static final String[] KEYWORD_CONSTANTS = {"true", "false", "null", "this"};
+    private static final String[] CLASSES = {"Output", "Screen", "Memory", "Math", "Keyboard", "Sys"};
+    private static final String[] VARIABLES = {"x", "y", "size", "i", "j", "count", "sum", "length", "a", "b"};
+    private static final String[] WORDS = {"draw", "the", "square", "moves", "left", "right", "size", "of", "game", "loop"};
+
+    /**
+     * What to generate.
+     * @param seed of the random choices, the same seed gives the same corpus.
+     * @param fileSize approximate size of every class in bytes.
+     * @param maxDepth how deep statements and expressions may nest.
+     * @param expressionLength maximal number of terms in an expression.
+     * @param commentDensity chance of a comment before a statement or subroutine, 0 to 1.
+     * @param stringFrequency chance of a term being a string constant, 0 to 1.
+     */
+    public record Settings(long seed, long fileSize, int maxDepth, int expressionLength,
+                           double commentDensity, double stringFrequency) {
+        /**
+         * @return settings producing 64 KB classes of typical shape.
+         */
+        public static Settings defaults() {
+            return new Settings(42, 64 * 1024, 3, 4, 0.2, 0.1);
+        }
+
+        public Settings withSeed(long seed) {
+            return new Settings(seed, fileSize, maxDepth, expressionLength, commentDensity, stringFrequency);
+        }
+
+        public Settings withFileSize(long fileSize) {
+            return new Settings(seed, fileSize, maxDepth, expressionLength, commentDensity, stringFrequency);
+        }
+    }
+
+    private final Settings settings;
+    private SplittableRandom random; // Of the class being written.
+    private Writer out; // Of the class being written.
+    private long written; // Characters of the class written so far.
+
+    public JackCorpusGenerator(Settings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Writes a number of classes into a directory, named Class0.jack, Class1.jack, etc.
+     * @param directory where the files go, created if needed.
+     * @param files how many classes.
+     * @return the written files.
+     */
+    public List<Path> writeCorpus(Path directory, int files) throws IOException {
+        Files.createDirectories(directory);
+        List<Path> paths = new ArrayList<>(files);
+        for (int index = 0; index < files; index++) {
+            String className = "Class" + index;
+            Path path = directory.resolve(className + ".jack");
+            try (Writer writer = Files.newBufferedWriter(path, StandardCharsets.US_ASCII)) {
+                writeClass(className, index, writer);
+            }
+            paths.add(path);
+        }
+        return paths;
+    }
+
+    /**
+     * Writes one class of about settings.fileSize() characters. Only ASCII characters are used.
+     * @param className name of the class.
+     * @param index of the class in its corpus, mixed into the seed.
+     * @param writer receiving the class, not closed.
+     */
+    public void writeClass(String className, int index, Writer writer) throws IOException {
+        random = new SplittableRandom(settings.seed() * 31 + index);
+        out = writer;
+        written = 0;
+        if (chance(settings.commentDensity())) {
+            blockComment("");
+        }
+        write("class " + className + " {\n");
+        int fields = random.nextInt(4);
+        for (int i = 0; i < fields; i++) {
+            write("   " + (random.nextBoolean() ? "field " : "static ") + pick(TYPES) + " f" + i + ", g" + i + ";\n");
+        }
+        int subroutine = 0;
+        do {
+            subroutine(subroutine++);
+        } while (written < settings.fileSize());
+        write("}\n");
+    }
+
+    private void subroutine(int number) throws IOException {
+        write("\n");
+        if (chance(settings.commentDensity())) {
+            blockComment("   ");
+        }
+        String kind = number == 0 ? "constructor" : random.nextBoolean() ? "method" : "function";
+        String returnType = kind.equals("constructor") ? "Object" : random.nextBoolean() ? "void" : pick(TYPES);
+        write("   " + kind + " " + returnType + " sub" + number + "(");
+        int parameters = random.nextInt(4);
+        for (int i = 0; i < parameters; i++) {
+            write((i > 0 ? ", " : "") + pick(TYPES) + " p" + i);
+        }
+        write(") {\n");
+        write("      var " + pick(TYPES) + " " + String.join(", ", VARIABLES) + ";\n");
+        write("      var Array arr;\n");
+        statements(1, "      ");
+        write("      return" + (returnType.equals("void") ? "" : " " + expression(settings.maxDepth())) + ";\n");
+        write("   }\n");
+    }
+
+    private void statements(int depth, String indent) throws IOException {
+        int count = 1 + random.nextInt(6);
+        for (int i = 0; i < count; i++) {
+            if (chance(settings.commentDensity())) {
+                write(indent + "// " + sentence() + "\n");
+            }
+            int choice = random.nextInt(depth < settings.maxDepth() ? 5 : 3);
+            switch (choice) {
+                case 0 -> write(indent + "let " + pick(VARIABLES) + " = " + expression(settings.maxDepth()) + ";\n");
+                case 1 -> write(indent + "let arr[" + expression(settings.maxDepth()) + "] = "
+                        + expression(settings.maxDepth()) + ";\n");
+                case 2 -> write(indent + "do " + call(settings.maxDepth()) + ";\n");
+                case 3 -> {
+                    write(indent + "if (" + expression(settings.maxDepth()) + ") {\n");
+                    statements(depth + 1, indent + "   ");
+                    if (random.nextBoolean()) {
+                        write(indent + "} else {\n");
+                        statements(depth + 1, indent + "   ");
+                    }
+                    write(indent + "}\n");
+                }
+                default -> {
+                    write(indent + "while (" + expression(settings.maxDepth()) + ") {\n");
+                    statements(depth + 1, indent + "   ");
+                    write(indent + "}\n");
+                }
+            }
+        }
+    }
+
+    /**
+     * @param depth how many more levels of nesting are allowed.
+     * @return an expression of 1 to expressionLength terms.
+     */
+    private String expression(int depth) {
+        StringBuilder expression = new StringBuilder(term(depth));
+        int terms = 1 + random.nextInt(Math.max(1, settings.expressionLength()));
+        for (int i = 1; i < terms; i++) {
+            expression.append(' ').append(pick(OPERATORS)).append(' ').append(term(depth));
+        }
+        return expression.toString();
+    }
+
+    private String term(int depth) {
+        if (chance(settings.stringFrequency())) {
+            return "\"" + sentence() + "\"";
+        }
+        int choice = random.nextInt(depth > 0 ? 8 : 3);
+        return switch (choice) {
+            case 0 -> String.valueOf(random.nextInt(32768));
+            case 1 -> pick(KEYWORD_CONSTANTS);
+            case 2 -> pick(VARIABLES);
+            case 3 -> "(" + expression(depth - 1) + ")";
+            case 4 -> (random.nextBoolean() ? "-" : "~") + term(depth - 1);
+            case 5 -> "arr[" + expression(depth - 1) + "]";
+            default -> call(depth - 1);
+        };
+    }
+
+    private String call(int depth) {
+        StringBuilder call = new StringBuilder();
+        int choice = random.nextInt(3);
+        if (choice == 0) {
+            call.append(pick(CLASSES)).append('.');
+        } else if (choice == 1) {
+            call.append(pick(VARIABLES)).append('.');
+        }
+        call.append("sub").append(random.nextInt(16)).append('(');
+        int arguments = depth > 0 ? random.nextInt(4) : 0;
+        for (int i = 0; i < arguments; i++) {
+            call.append(i > 0 ? ", " : "").append(expression(depth - 1));
+        }
+        return call.append(')').toString();
+    }
+
+    private void blockComment(String indent) throws IOException {
+        write(indent + "/**\n");
+        int lines = 1 + random.nextInt(5);
+        for (int i = 0; i < lines; i++) {
+            write(indent + " * " + sentence() + "\n");
+        }
+        write(indent + " */\n");
+    }
+
+    private String sentence() {
+        StringBuilder sentence = new StringBuilder(pick(WORDS));
+        int words = random.nextInt(8);
+        for (int i = 0; i < words; i++) {
+            sentence.append(' ').append(pick(WORDS));
+        }
+        return sentence.toString();
+    }
+
+    private boolean chance(double probability) {
+        return random.nextDouble() < probability;
+    }
+
+    private String pick(String[] options) {
+        return options[random.nextInt(options.length)];
+    }
+
+    private void write(String text) throws IOException {
+        out.write(text);
+        written += text.length();
+    }
+
+    /**
+     * Writes a corpus from the command line.
+     */
+    public static void main(String[] args) throws IOException {
+        Settings settings = Settings.defaults();
+        long seed = settings.seed();
+        long size = settings.fileSize();
+        int depth = settings.maxDepth();
+        int expressionLength = settings.expressionLength();
+        double comments = settings.commentDensity();
+        double strings = settings.stringFrequency();
+        int files = 1;
+        Path directory = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--seed" -> seed = Long.parseLong(args[++i]);
+                case "--files" -> files = Integer.parseInt(args[++i]);
+                case "--size" -> size = parseSize(args[++i]);
+                case "--depth" -> depth = Integer.parseInt(args[++i]);
+                case "--expression-length" -> expressionLength = Integer.parseInt(args[++i]);
+                case "--comment-density" -> comments = Double.parseDouble(args[++i]);
+                case "--string-frequency" -> strings = Double.parseDouble(args[++i]);
+                default -> directory = Path.of(args[i]);
+            }
+        }
+        if (directory == null) {
+            System.out.println("Please provide the output directory");
+            return;
+        }
+        JackCorpusGenerator generator = new JackCorpusGenerator(
+                new Settings(seed, size, depth, expressionLength, comments, strings));
+        List<Path> written = generator.writeCorpus(directory, files);
+        System.out.println("Generated " + written.size() + " classes in " + directory);
+    }
+
+    /**
+     * @param size like "512", "64KB", "10MB" or "1GB".
+     * @return the number of bytes.
+     */
+    static long parseSize(String size) {
+        String upper = size.trim().toUpperCase(Locale.ROOT);
+        long unit = 1;
+        if (upper.endsWith("KB")) {
+            unit = 1L << 10;
+        } else if (upper.endsWith("MB")) {
+            unit = 1L << 20;
+        } else if (upper.endsWith("GB")) {
+            unit = 1L << 30;
+        }
+        String number = unit == 1 ? upper : upper.substring(0, upper.length() - 2);
+        return Long.parseLong(number.trim()) * unit;
+    }
+}
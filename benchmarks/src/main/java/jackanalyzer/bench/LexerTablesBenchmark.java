@@ -0,0 +1,108 @@
+package jackanalyzer.bench;
+
+import jackanalyzer.JackCharacters;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the lookups the lexer makes per character and per word, on the characters and words of a sample:
+ * the JackCharacters tables against the linear scans they replaced (kept here as the baseline).
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LexerTablesBenchmark {
+    private static final String[] KEYWORDS = {
+            "class", "constructor", "function", "method", "field", "static", "var", "int", "char", "boolean",
+            "void", "true", "false", "null", "this", "let", "do", "if", "else", "while", "return"
+    };
+
+    @Param({"Square/SquareGame.jack", "ArrayTest/Main.jack"})
+    public String sample;
+
+    char[] source;
+    int[] wordStarts; // The keywords, identifiers and integers of the sample.
+    int[] wordLengths;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        source = Files.readString(Inputs.scaled(sample, 1).toPath()).toCharArray();
+        List<int[]> words = new ArrayList<>();
+        for (int i = 0; i < source.length; ) {
+            if (Character.isLetterOrDigit(source[i]) || source[i] == '_') {
+                int start = i;
+                while (i < source.length && (Character.isLetterOrDigit(source[i]) || source[i] == '_')) {
+                    i++;
+                }
+                words.add(new int[]{start, i - start});
+            } else {
+                i++;
+            }
+        }
+        wordStarts = words.stream().mapToInt(word -> word[0]).toArray();
+        wordLengths = words.stream().mapToInt(word -> word[1]).toArray();
+    }
+
+    @Benchmark
+    public int keywordsLinearScan() {
+        int keywords = 0;
+        for (int i = 0; i < wordStarts.length; i++) {
+            for (String keyword : KEYWORDS) {
+                if (keyword.length() == wordLengths[i] && regionEquals(keyword, source, wordStarts[i])) {
+                    keywords++;
+                    break;
+                }
+            }
+        }
+        return keywords;
+    }
+
+    @Benchmark
+    public int keywordsPerfectHash() {
+        int keywords = 0;
+        for (int i = 0; i < wordStarts.length; i++) {
+            if (JackCharacters.keyword(source, wordStarts[i], wordLengths[i]) >= 0) {
+                keywords++;
+            }
+        }
+        return keywords;
+    }
+
+    @Benchmark
+    public int classesIndexOf() {
+        int words = 0;
+        for (char c : source) {
+            if (!Character.isWhitespace(c) && "{}()[].,;+-*/&|<>=~".indexOf(c) == -1 && c != '"') {
+                words++;
+            }
+        }
+        return words;
+    }
+
+    @Benchmark
+    public int classesTable() {
+        int words = 0;
+        for (char c : source) {
+            if (JackCharacters.classOf(c) == JackCharacters.WORD) {
+                words++;
+            }
+        }
+        return words;
+    }
+
+    private static boolean regionEquals(String word, char[] buffer, int start) {
+        for (int i = 0; i < word.length(); i++) {
+            if (word.charAt(i) != buffer[start + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,80 @@
+package jackanalyzer.bench;
+
+import jackanalyzer.CompilationEngine;
+import jackanalyzer.JackTokenizer;
+import jackanalyzer.SyntaxTree;
+import jackanalyzer.XmlSink;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures CompilationEngine.compileClass() on an already tokenized class,
+ * once writing to a sink that drops the XML and once writing the XML file,
+ * and the SyntaxTree: building it, and writing the XML of a built tree.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+    @Param({"Square/SquareGame.jack", "ArrayTest/Main.jack", "ExpressionLessSquare/Square.jack"})
+    public String sample;
+
+    @Param({"1", "100"})
+    public int scale;
+
+    File input;
+    File output;
+    SyntaxTree tree;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        input = Inputs.scaled(sample, scale);
+        output = new File(input.getParentFile(), input.getName().replace(".jack", ".xml"));
+        output.deleteOnExit();
+        tree = SyntaxTree.parse(new JackTokenizer(input));
+    }
+
+    /**
+     * A tokenizer created before every call, so only the parsing and the output are measured.
+     */
+    @State(Scope.Thread)
+    public static class FreshTokenizer {
+        JackTokenizer tokenizer;
+
+        @Setup(Level.Invocation)
+        public void create(ParserBenchmark benchmark) throws IOException {
+            tokenizer = new JackTokenizer(benchmark.input);
+        }
+    }
+
+    @Benchmark
+    public void compileClassNullSink(FreshTokenizer fresh) throws IOException {
+        CompilationEngine engine = new CompilationEngine(fresh.tokenizer, new XmlSink(new Inputs.NullChannel()));
+        engine.compileClass();
+        engine.close();
+    }
+
+    @Benchmark
+    public void compileClassFileSink(FreshTokenizer fresh) throws IOException {
+        CompilationEngine engine = new CompilationEngine(fresh.tokenizer, output);
+        engine.compileClass();
+        engine.close();
+    }
+
+    @Benchmark
+    public SyntaxTree buildTree(FreshTokenizer fresh) {
+        return SyntaxTree.parse(fresh.tokenizer);
+    }
+
+    @Benchmark
+    public void walkTreeNullSink() throws IOException {
+        try (XmlSink xml = new XmlSink(new Inputs.NullChannel())) {
+            tree.walk(xml);
+        }
+    }
+}
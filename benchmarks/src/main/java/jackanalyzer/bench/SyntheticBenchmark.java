@@ -0,0 +1,66 @@
+package jackanalyzer.bench;
+
+import jackanalyzer.CompilationEngine;
+import jackanalyzer.JackTokenizer;
+import jackanalyzer.XmlSink;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the analyzer on generated classes (see JackCorpusGenerator), from 1 KB up to sizes
+ * the sample programs never reach:
+ * - wholeFile / streaming: tokenizing and parsing one class of the given size, the XML is dropped.
+ * Sizes can be changed with -p, e.g. -p size=1GB (only sensible for streaming).
+ * Whole runs over a folder of many small classes are in SyntheticCorpusBenchmark.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SyntheticBenchmark {
+    @Param({"1KB", "1MB", "64MB"})
+    public String size;
+
+    @Param({"42"})
+    public long seed;
+
+    File input;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        JackCorpusGenerator.Settings settings = JackCorpusGenerator.Settings.defaults().withSeed(seed);
+        Path directory = Files.createTempDirectory("jack-synthetic");
+        input = new JackCorpusGenerator(settings.withFileSize(JackCorpusGenerator.parseSize(size)))
+                .writeCorpus(directory.resolve("single"), 1).get(0).toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        Path directory = input.toPath().getParent().getParent();
+        try (var paths = Files.walk(directory)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void wholeFile() throws IOException {
+        CompilationEngine engine = new CompilationEngine(new JackTokenizer(input), new XmlSink(new Inputs.NullChannel()));
+        engine.compileClass();
+        engine.close();
+    }
+
+    @Benchmark
+    public void streaming() throws IOException {
+        try (Reader reader = new FileReader(input)) {
+            CompilationEngine engine = new CompilationEngine(new JackTokenizer(reader), new XmlSink(new Inputs.NullChannel()));
+            engine.compileClass();
+            engine.close();
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package jackanalyzer.bench;
+
+import jackanalyzer.JackAnalyzer;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures a whole single threaded analyzer run over a folder of many 4 KB generated classes
+ * (see JackCorpusGenerator). Kept apart from SyntheticBenchmark, whose class size does not apply here.
+ * The file count can be changed with -p, e.g. -p files=10000.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SyntheticCorpusBenchmark {
+    @Param({"1000"})
+    public int files;
+
+    @Param({"42"})
+    public long seed;
+
+    Path corpus;
+    String[] arguments;
+    PrintStream console;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        JackCorpusGenerator.Settings settings = JackCorpusGenerator.Settings.defaults().withSeed(seed).withFileSize(4 * 1024);
+        corpus = Files.createTempDirectory("jack-corpus");
+        new JackCorpusGenerator(settings).writeCorpus(corpus, files);
+        arguments = new String[]{"--jobs", "1", corpus.toString()};
+        console = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        System.setOut(console);
+        try (var paths = Files.walk(corpus)) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public void corpus() throws IOException {
+        JackAnalyzer.main(arguments);
+    }
+}
@@ -0,0 +1,83 @@
+package jackanalyzer.bench;
+
+import jackanalyzer.JackTokenizer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the JackTokenizer: building it from a file, from a memory mapped file or from its .jtok token cache,
+ * and walking its tokens with tokenType().
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TokenizerBenchmark {
+    @Param({"Square/SquareGame.jack", "ArrayTest/Main.jack", "ExpressionLessSquare/Square.jack"})
+    public String sample;
+
+    @Param({"1", "100"})
+    public int scale;
+
+    File input;
+    File cache;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        input = Inputs.scaled(sample, scale);
+        cache = new File(input.getParentFile(), input.getName().replace(".jack", ".jtok"));
+        cache.deleteOnExit();
+        new JackTokenizer(input, cache); // Writes the cache, so every call below loads it.
+    }
+
+    /**
+     * A tokenizer created before every call, so only the walk over the tokens is measured.
+     */
+    @State(Scope.Thread)
+    public static class FreshTokenizer {
+        JackTokenizer tokenizer;
+
+        @Setup(Level.Invocation)
+        public void create(TokenizerBenchmark benchmark) throws IOException {
+            tokenizer = new JackTokenizer(benchmark.input);
+        }
+    }
+
+    @Benchmark
+    public JackTokenizer construct() throws IOException {
+        return new JackTokenizer(input);
+    }
+
+    @Benchmark
+    public JackTokenizer constructMapped() throws IOException {
+        return JackTokenizer.mapped(input);
+    }
+
+    @Benchmark
+    public JackTokenizer constructFromCache() throws IOException {
+        return new JackTokenizer(input, cache);
+    }
+
+    @Benchmark
+    public void tokenType(FreshTokenizer fresh, Blackhole blackhole) {
+        JackTokenizer tokenizer = fresh.tokenizer;
+        while (tokenizer.hasMoreTokens()) {
+            tokenizer.advance();
+            blackhole.consume(tokenizer.tokenType());
+        }
+    }
+
+    @Benchmark
+    public void getTokenType(FreshTokenizer fresh, Blackhole blackhole) {
+        JackTokenizer tokenizer = fresh.tokenizer;
+        while (tokenizer.hasMoreTokens()) {
+            tokenizer.advance();
+            blackhole.consume(tokenizer.getTokenType());
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package jackanalyzer.bench;
+
+import jackanalyzer.JackTokenizer;
+import jackanalyzer.VectorScan;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.Comparator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures tokenizing a generated class with the scalar and with the vector scan of comments
+ * and strings (see --simd), from few comments to mostly comments.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class VectorScanBenchmark {
+    @Param({"false", "true"})
+    public boolean simd;
+
+    @Param({"0.2", "0.8"})
+    public double commentDensity;
+
+    File input;
+
+    @Setup(Level.Trial)
+    public void prepare() throws IOException {
+        if (simd && !VectorScan.enable()) {
+            throw new IllegalStateException("The Vector API is not available");
+        }
+        JackCorpusGenerator.Settings defaults = JackCorpusGenerator.Settings.defaults();
+        JackCorpusGenerator.Settings settings = new JackCorpusGenerator.Settings(defaults.seed(), 256 * 1024,
+                defaults.maxDepth(), defaults.expressionLength(), commentDensity, defaults.stringFrequency());
+        input = new JackCorpusGenerator(settings).writeCorpus(Files.createTempDirectory("jack-vector"), 1).get(0).toFile();
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanUp() throws IOException {
+        VectorScan.disable();
+        try (var paths = Files.walk(input.toPath().getParent())) {
+            paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+        }
+    }
+
+    @Benchmark
+    public JackTokenizer construct() throws IOException {
+        return new JackTokenizer(input);
+    }
+}
@@ -0,0 +1,207 @@
+package jackanalyzer;
+
+import java.io.File;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * The AnalyzerOptions class holds the command line of the JackAnalyzer.
+ *
+ * Usage: JackAnalyzer [options] <path-to-file>.jack | <path-to-directory>
+ * Options:
+ * - --stream : tokenize while parsing instead of reading the whole file first (constant memory).
+ * - --jobs N : number of files of a directory analyzed in parallel, default is the number of processors.
+ * - --recursive : analyze the .jack files of all subdirectories too.
+ * - --include GLOB : only analyze files whose path relative to the directory matches (may be repeated).
+ * - --exclude GLOB : skip files and subdirectories whose relative path matches (may be repeated).
+ * - --incremental : skip files that did not change since the last run with the same options.
+ * - --watch : keep running and analyze every .jack file again when it is saved.
+ * - --tokens : also write the token list of every file, as xxxT.xml, from the same tokenization.
+ * - --compact : write the XML without indentation and line breaks, for machine consumers.
+ * - --check : only parse, write nothing, report syntax errors and exit with status 1 if there are any.
+ * - --gzip : write every output compressed, as xxx.xml.gz, the uncompressed XML never touches the disk.
+ * - --gzip-archive FILE : write all outputs compressed into the one gzip file FILE instead.
+ * - --archive FILE : write all outputs into the one zip file FILE instead.
+ * - --token-cache : keep the tokens of every file in xxx.jtok, and load them from there while the file is unchanged.
+ * - --mmap : read every file through a memory mapping instead of a FileReader (for large files).
+ * - --simd : skip comments and strings with vector instructions (needs the JVM option --add-modules jdk.incubator.vector).
+ */
+final class AnalyzerOptions {
+    static final String USAGE = "Usage: JackAnalyzer [--stream] [--jobs N] [--recursive] [--include GLOB]... [--exclude GLOB]... [--incremental] [--watch] [--tokens] [--compact] [--check] [--gzip | --gzip-archive FILE | --archive FILE] [--token-cache] [--mmap] [--simd] <file.jack | directory>";
+
+    File path; // The .jack file or the directory to analyze.
+    boolean streaming; // Pull tokens on demand instead of tokenizing each file up front.
+    int jobs = Runtime.getRuntime().availableProcessors(); // Files analyzed at the same time.
+    boolean recursive; // Walk the whole directory tree.
+    final List<PathMatcher> includes = new ArrayList<>(); // Empty means every .jack file.
+    final List<PathMatcher> excludes = new ArrayList<>();
+    boolean incremental; // Skip unchanged files.
+    BuildManifest manifest; // Set by the analyzer when incremental.
+    boolean watch; // Keep running and re-analyze saved files.
+    boolean tokens; // Write xxxT.xml next to every xxx.xml.
+    boolean compact; // No indentation and no line breaks in the XML.
+    boolean check; // Parse only, no output files.
+    CheckSummary checkSummary; // Set by the analyzer when checking.
+    boolean gzip; // Write xxx.xml.gz instead of xxx.xml.
+    File gzipArchiveFile; // Write everything into this one gzip file, or null.
+    File archiveFile; // Write everything into this one zip file, or null.
+    OutputArchive archive; // Set by the analyzer when writing one of the archives.
+    boolean tokenCache; // Load the tokens from xxx.jtok when it matches the source.
+    boolean mmap; // Map the files into memory instead of reading them.
+    boolean simd; // Use the Vector API fast path of the lexer.
+    SymbolPool symbols = new SymbolPool(); // The names of the files of this run, replaced by every --watch batch.
+
+    /**
+     * Parses the command line arguments.
+     * @param args as given to main().
+     * @return the options.
+     * @throws IllegalArgumentException with a message for the user if the arguments are not valid.
+     */
+    static AnalyzerOptions parse(String[] args) {
+        AnalyzerOptions options = new AnalyzerOptions();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--stream")) {
+                options.streaming = true;
+            } else if (arg.equals("--jobs")) {
+                options.jobs = positiveNumber(arg, i + 1 < args.length ? args[++i] : null);
+            } else if (arg.equals("--compact")) {
+                options.compact = true;
+            } else if (arg.equals("--check")) {
+                options.check = true;
+            } else if (arg.equals("--gzip")) {
+                options.gzip = true;
+            } else if (arg.equals("--gzip-archive")) {
+                options.gzipArchiveFile = file(arg, i + 1 < args.length ? args[++i] : null);
+            } else if (arg.equals("--archive")) {
+                options.archiveFile = file(arg, i + 1 < args.length ? args[++i] : null);
+            } else if (arg.equals("--mmap")) {
+                options.mmap = true;
+            } else if (arg.equals("--simd")) {
+                options.simd = true;
+            } else if (arg.equals("--token-cache")) {
+                options.tokenCache = true;
+            } else if (arg.equals("--tokens")) {
+                options.tokens = true;
+            } else if (arg.equals("--watch")) {
+                options.watch = true;
+            } else if (arg.equals("--incremental")) {
+                options.incremental = true;
+            } else if (arg.equals("--recursive")) {
+                options.recursive = true;
+            } else if (arg.equals("--include") || arg.equals("--exclude")) {
+                List<PathMatcher> matchers = arg.equals("--include") ? options.includes : options.excludes;
+                matchers.add(glob(arg, i + 1 < args.length ? args[++i] : null));
+            } else if (arg.startsWith("--")) {
+                throw new IllegalArgumentException("Unknown option: " + arg + "\n" + USAGE);
+            } else if (options.path == null) {
+                options.path = new File(arg);
+            } else {
+                throw new IllegalArgumentException("Please provide exactly one jack file path or a directory path\n" + USAGE);
+            }
+        }
+        if (options.path == null) {
+            throw new IllegalArgumentException("Please provide exactly one jack file path or a directory path\n" + USAGE);
+        }
+        if (options.gzipArchiveFile != null && options.archiveFile != null) {
+            throw new IllegalArgumentException("Please choose either --gzip-archive or --archive\n" + USAGE);
+        }
+        if (options.tokenCache && options.streaming) {
+            throw new IllegalArgumentException("--token-cache cannot be combined with --stream, the cache holds whole files\n" + USAGE);
+        }
+        if (options.mmap && (options.streaming || options.tokenCache)) {
+            throw new IllegalArgumentException("--mmap cannot be combined with --stream or --token-cache, they read the files their own way\n" + USAGE);
+        }
+        String archive = options.gzipArchiveFile != null ? "--gzip-archive" : options.archiveFile != null ? "--archive" : null;
+        if (options.check && (options.tokens || options.compact || options.gzip || archive != null)) {
+            // Checking writes nothing, an output option would be silently ignored.
+            throw new IllegalArgumentException("--check cannot be combined with --tokens, --compact, --gzip, --gzip-archive or --archive\n" + USAGE);
+        }
+        if (options.check && options.watch) {
+            // The summary and exit status of a check come at the end of the run, and watching never ends.
+            throw new IllegalArgumentException("--check cannot be combined with --watch\n" + USAGE);
+        }
+        if (archive != null && (options.gzip || options.incremental || options.watch)) {
+            // The archive is written from scratch by every run, it cannot be brought up to date.
+            throw new IllegalArgumentException(archive + " cannot be combined with --gzip, --incremental or --watch\n" + USAGE);
+        }
+        return options;
+    }
+
+    /**
+     * @return a description of everything in these options that changes the output files.
+     */
+    String outputFormat() {
+        if (check) {
+            return "check";
+        }
+        return (compact ? "compact-xml" : "xml") + (tokens ? "+tokens" : "") + (gzip ? "+gzip" : "");
+    }
+
+    /**
+     * @param relativePath of a .jack file, relative to the analyzed directory.
+     * @return true if the file passes the include and exclude filters.
+     */
+    boolean accepts(Path relativePath) {
+        return (includes.isEmpty() || matches(includes, relativePath)) && !excludes(relativePath);
+    }
+
+    /**
+     * @param relativePath of a file or directory, relative to the analyzed directory.
+     * @return true if it matches one of the exclude patterns.
+     */
+    boolean excludes(Path relativePath) {
+        return matches(excludes, relativePath);
+    }
+
+    private static boolean matches(List<PathMatcher> matchers, Path path) {
+        for (PathMatcher matcher : matchers) {
+            if (matcher.matches(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the matcher of a glob option.
+     * @throws IllegalArgumentException if the pattern is missing or not a valid glob.
+     */
+    private static PathMatcher glob(String option, String pattern) {
+        if (pattern == null) {
+            throw new IllegalArgumentException(option + " needs a pattern\n" + USAGE);
+        }
+        try {
+            return FileSystems.getDefault().getPathMatcher("glob:" + pattern);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(option + " has an invalid pattern: " + pattern + "\n" + USAGE);
+        }
+    }
+
+    /**
+     * @return the file of a file option.
+     * @throws IllegalArgumentException if the file name is missing.
+     */
+    private static File file(String option, String name) {
+        if (name == null || name.startsWith("--")) {
+            throw new IllegalArgumentException(option + " needs a file name\n" + USAGE);
+        }
+        return new File(name);
+    }
+
+    /**
+     * @return the value of a numeric option.
+     * @throws IllegalArgumentException if the value is missing or not a positive number.
+     */
+    private static int positiveNumber(String option, String value) {
+        try {
+            int number = Integer.parseInt(value);
+            if (number > 0) {
+                return number;
+            }
+        } catch (NumberFormatException e) {
+            // Reported below.
+        }
+        throw new IllegalArgumentException(option + " needs a positive number, got: " + value + "\n" + USAGE);
+    }
+}
@@ -0,0 +1,213 @@
+package jackanalyzer;
+
+import java.io.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The AnalyzerWatcher class keeps the analyzer running and re-analyzes .jack files as they are saved.
+ *
+ * How it works:
+ * - The analyzed directory (and its subdirectories with --recursive) is registered with a WatchService.
+ * - Editors often write a file in several steps, so a changed file is analyzed only once no new event
+ *   arrived for it during a short quiet period.
+ * - Only the changed file goes through jackToXML, and the time it took is reported.
+ *   The JVM stays warm between saves, so after the first few files this takes a few milliseconds.
+ * - Every batch of files gets a new SymbolPool, so the names of old versions of the files are dropped.
+ */
+final class AnalyzerWatcher {
+    private static final long QUIET_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(30); // Debounce of one save.
+
+    private final Path root; // The watched directory.
+    private final Path singleFile; // The only file of interest, or null for a whole directory.
+    private final AnalyzerOptions options;
+    private final WatchService service;
+    private final Map<WatchKey, Path> directories = new HashMap<>(); // The directory each key watches.
+    private final Map<Path, Long> pending = new LinkedHashMap<>(); // Changed file -> time of its last event.
+
+    private AnalyzerWatcher(Path root, Path singleFile, AnalyzerOptions options, WatchService service) {
+        this.root = root;
+        this.singleFile = singleFile;
+        this.options = options;
+        this.service = service;
+    }
+
+    /**
+     * Watches the input path until the process is stopped.
+     * @param path the .jack file or the directory given on the command line, already analyzed once.
+     * @param options of this run.
+     * @throws IOException if the directory cannot be watched.
+     */
+    static void watch(File path, AnalyzerOptions options) throws IOException {
+        Path absolute = path.toPath().toAbsolutePath().normalize();
+        Path root = Files.isDirectory(absolute) ? absolute : absolute.getParent();
+        Path singleFile = Files.isDirectory(absolute) ? null : absolute;
+        try (WatchService service = root.getFileSystem().newWatchService()) {
+            AnalyzerWatcher watcher = new AnalyzerWatcher(root, singleFile, options, service);
+            watcher.register(root, false);
+            System.out.println("Watching " + (singleFile != null ? singleFile : root) + " for changes, press Ctrl+C to stop.");
+            watcher.run();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits for events and analyzes every changed file once it has been quiet for a moment.
+     */
+    private void run() throws IOException, InterruptedException {
+        while (!directories.isEmpty()) {
+            WatchKey key;
+            if (pending.isEmpty()) {
+                key = service.take();
+            } else {
+                long oldest = pending.values().iterator().next();
+                long wait = oldest + QUIET_PERIOD_NANOS - System.nanoTime();
+                key = wait > 0 ? service.poll(wait, TimeUnit.NANOSECONDS) : service.poll();
+            }
+            if (key != null) {
+                handle(key);
+            }
+            analyzeQuietFiles();
+        }
+    }
+
+    /**
+     * Records the files a key reports as changed, and watches new subdirectories.
+     */
+    private void handle(WatchKey key) throws IOException {
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Events were lost, so nothing is known about what changed.
+                System.out.println("Too many changes at once, analyzing everything again.");
+                pending.clear();
+                options.symbols = new SymbolPool(); // A long watch must not collect every name ever typed.
+                try {
+                    JackAnalyzer.analyze(singleFile != null ? singleFile.toFile() : root.toFile(), options);
+                } catch (JackSyntaxException e) {
+                    System.out.println("Error: " + e.getMessage()); // Already names the file.
+                } catch (IOException | RuntimeException e) {
+                    // Like a single file, a failure of the whole analysis must not stop the watch.
+                    System.out.println("Error: " + e.getMessage());
+                } finally {
+                    saveManifest(); // Keeps what was done before a failure.
+                }
+                continue;
+            }
+            if (directory == null) {
+                continue;
+            }
+            Path changed = directory.resolve((Path) event.context());
+            if (event.kind() == StandardWatchEventKinds.ENTRY_CREATE && options.recursive && Files.isDirectory(changed)) {
+                register(changed, true); // Files moved in together with the directory are new too.
+            } else if (isWatched(changed)) {
+                pending.remove(changed); // Re-inserted, so the map stays ordered by the last event.
+                pending.put(changed, System.nanoTime());
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key); // The directory is gone.
+        }
+    }
+
+    /**
+     * Analyzes the files which had no new event during the quiet period.
+     */
+    private void analyzeQuietFiles() {
+        long now = System.nanoTime();
+        boolean analyzed = false;
+        boolean batch = false; // Whether a file of this call has been analyzed, successfully or not.
+        Iterator<Map.Entry<Path, Long>> entries = pending.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<Path, Long> entry = entries.next();
+            if (now - entry.getValue() < QUIET_PERIOD_NANOS) {
+                break; // Ordered by the last event, all the following ones are even more recent.
+            }
+            entries.remove();
+            File jackFile = entry.getKey().toFile();
+            if (!jackFile.isFile()) {
+                continue; // Deleted or renamed meanwhile.
+            }
+            if (!batch) {
+                options.symbols = new SymbolPool(); // A long watch must not collect every name ever typed.
+                batch = true;
+            }
+            long start = System.nanoTime();
+            try {
+                System.out.print(JackAnalyzer.jackToXML(jackFile, options));
+                System.out.printf("Analyzed %s in %.1f ms%n", jackFile.getName(), (System.nanoTime() - start) / 1e6);
+                analyzed = true;
+            } catch (JackSyntaxException e) {
+                System.out.println("Error: " + e.getMessage()); // Already names the file.
+            } catch (IOException | RuntimeException e) {
+                // A file in the middle of being edited must not stop the watch.
+                System.out.println("Error: " + jackFile.getName() + ": " + e.getMessage());
+            }
+        }
+        if (analyzed) {
+            saveManifest();
+        }
+    }
+
+    /**
+     * @return true if the path is a .jack file this watch is about.
+     */
+    private boolean isWatched(Path file) {
+        if (singleFile != null) {
+            return file.equals(singleFile);
+        }
+        return file.getFileName().toString().endsWith(".jack") && options.accepts(root.relativize(file));
+    }
+
+    /**
+     * Watches a directory, and all the directories under it when recursive.
+     * @param queueFiles whether the .jack files already there should be analyzed.
+     */
+    private void register(Path directory, boolean queueFiles) throws IOException {
+        if (!options.recursive || singleFile != null) {
+            watchDirectory(directory);
+            return;
+        }
+        Files.walkFileTree(directory, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) throws IOException {
+                if (!dir.equals(root) && options.excludes(root.relativize(dir))) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                watchDirectory(dir);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+                if (queueFiles && isWatched(file)) {
+                    pending.put(file, System.nanoTime());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private void watchDirectory(Path directory) throws IOException {
+        WatchKey key = directory.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        directories.put(key, directory);
+    }
+
+    /**
+     * Saves the manifest. A failure is reported like a failed file and the watch goes on,
+     * the next batch saves it again.
+     */
+    private void saveManifest() {
+        if (options.manifest == null) {
+            return;
+        }
+        try {
+            options.manifest.save();
+        } catch (IOException | RuntimeException e) {
+            System.out.println("Error: " + BuildManifest.FILE_NAME + ": " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package jackanalyzer;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+import java.nio.charset.*;
+
+/**
+ * The AppendableChannel class lets an XmlSink write into an Appendable, e.g. a StringBuilder or a Writer,
+ * by decoding the UTF-8 bytes of the sink back into chars.
+ *
+ * How it works:
+ * - Every write decodes all the bytes it gets into a small char buffer, which is appended whenever it is full.
+ * - A character whose bytes are split between two writes is kept (at most 3 bytes) until the next write.
+ * - close() flushes the Appendable if it is Flushable and closes it if it is Closeable.
+ */
+final class AppendableChannel implements WritableByteChannel {
+    private final Appendable out;
+    private final CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    private final CharBuffer chars = CharBuffer.allocate(4096); // Decoded, not yet appended.
+    private final ByteBuffer pending = ByteBuffer.allocate(4); // The start of a character continued by the next write.
+    private boolean open = true;
+
+    AppendableChannel(Appendable out) {
+        this.out = out;
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+        int count = source.remaining();
+        while (pending.position() > 0 && source.hasRemaining()) {
+            pending.put(source.get()); // One byte at a time, until the split character is complete.
+            pending.flip();
+            decode(pending, false);
+            pending.compact();
+        }
+        decode(source, false);
+        pending.put(source);
+        return count;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        pending.flip();
+        decode(pending, true); // A character cut off at the end becomes a replacement character.
+        decoder.flush(chars);
+        append();
+        if (out instanceof Flushable flushable) {
+            flushable.flush();
+        }
+        if (out instanceof Closeable closeable) {
+            closeable.close();
+        }
+    }
+
+    /**
+     * Decodes as many bytes as possible, appending the chars whenever the char buffer is full.
+     */
+    private void decode(ByteBuffer bytes, boolean endOfInput) throws IOException {
+        while (decoder.decode(bytes, chars, endOfInput).isOverflow()) {
+            append();
+        }
+        append();
+    }
+
+    private void append() throws IOException {
+        chars.flip();
+        out.append(chars);
+        chars.clear();
+    }
+}
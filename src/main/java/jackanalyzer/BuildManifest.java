@@ -0,0 +1,141 @@
+package jackanalyzer;
+
+import java.io.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * The BuildManifest class remembers which .jack files were already analyzed, for incremental runs.
+ *
+ * How it works:
+ * - The manifest is the file .jackanalyzer-cache in the analyzed directory.
+ * - It maps the path of every input (relative to that directory) to the SHA-256 hash of its content,
+ *   together with the analyzer version and output format that produced the XML.
+ * - A file whose hash, version and format are unchanged, and whose output still exists, is up to date
+ *   and does not need to be analyzed again.
+ * - When saving, the entries of inputs which were not seen by the run and no longer exist (deleted or
+ *   renamed) are dropped, so the manifest does not grow forever in a changing tree. Entries of inputs
+ *   that still exist are kept even if the run did not look at them (a single file, --include or
+ *   --exclude, or a run stopped by a syntax error), so the next full run can still skip them.
+ *
+ * Safe to use from several worker threads at once.
+ */
+final class BuildManifest {
+    static final String FILE_NAME = ".jackanalyzer-cache";
+
+    /**
+     * Bump whenever a change in the analyzer changes its output, so every file is analyzed again.
+     */
+    static final String ANALYZER_VERSION = "1";
+
+    private final Path directory; // The analyzed directory, the keys are relative to it.
+    private final String format; // Analyzer version and output format, part of every entry.
+    private final Map<String, String> entries = new ConcurrentHashMap<>(); // Relative path -> format:hash.
+    private final Set<String> visited = ConcurrentHashMap.newKeySet(); // Keys of the inputs seen by this run.
+
+    private BuildManifest(Path directory, String format) {
+        this.directory = directory;
+        this.format = ANALYZER_VERSION + "/" + format;
+    }
+
+    /**
+     * Reads the manifest of a directory. A missing or unreadable manifest is treated as empty.
+     * @param directory the analyzed directory.
+     * @param format describes the output options, entries written with other options are outdated.
+     * @return the manifest.
+     */
+    static BuildManifest load(Path directory, String format) {
+        BuildManifest manifest = new BuildManifest(directory, format);
+        Path file = directory.resolve(FILE_NAME);
+        if (Files.isRegularFile(file)) {
+            Properties properties = new Properties();
+            try (Reader reader = Files.newBufferedReader(file)) {
+                properties.load(reader);
+                for (String key : properties.stringPropertyNames()) {
+                    manifest.entries.put(key, properties.getProperty(key));
+                }
+            } catch (IOException | IllegalArgumentException e) {
+                manifest.entries.clear(); // A broken manifest only costs one full run.
+            }
+        }
+        return manifest;
+    }
+
+    /**
+     * @param jackFile the input.
+     * @param outputFile the output it produces.
+     * @param hash of the current content of the input, see hash().
+     * @return true if the input did not change since its output was written.
+     */
+    boolean isUpToDate(File jackFile, File outputFile, String hash) {
+        String key = key(jackFile);
+        visited.add(key);
+        return (format + ":" + hash).equals(entries.get(key)) && outputFile.isFile();
+    }
+
+    /**
+     * Records that the output of the input has been written.
+     * @param jackFile the input.
+     * @param hash of the content that was analyzed.
+     */
+    void record(File jackFile, String hash) {
+        String key = key(jackFile);
+        visited.add(key);
+        entries.put(key, format + ":" + hash);
+    }
+
+    /**
+     * Writes the manifest next to the inputs, without the entries of inputs which are gone.
+     * The old manifest is replaced in one step, so an interrupted run never leaves half a manifest behind.
+     * @throws IOException if the manifest cannot be written.
+     */
+    void save() throws IOException {
+        entries.keySet().removeIf(key -> !visited.contains(key) && !Files.isRegularFile(directory.resolve(key)));
+        Properties properties = new Properties();
+        properties.putAll(entries);
+        Path file = directory.resolve(FILE_NAME);
+        Path temporary = directory.resolve(FILE_NAME + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(temporary)) {
+            properties.store(writer, "JackAnalyzer incremental build manifest");
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param file to hash.
+     * @return the SHA-256 hash of the content of the file, in hex.
+     * @throws IOException if the file cannot be read.
+     */
+    static String hash(File file) throws IOException {
+        MessageDigest digest = sha256();
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                digest.update(buffer, 0, read);
+            }
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * @return a new SHA-256 digest, the hash of the manifest and of the token caches.
+     */
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required by every Java platform", e);
+        }
+    }
+
+    /**
+     * @return the key of an input: its path relative to the directory, with '/' as separator.
+     */
+    private String key(File jackFile) {
+        Path path = directory.toAbsolutePath().relativize(jackFile.toPath().toAbsolutePath());
+        return path.toString().replace(File.separatorChar, '/');
+    }
+}
@@ -1,5 +1,6 @@
 package jackanalyzer;
 import java.io.*;
+import java.util.Arrays;
 
 /**
  * The CompilationEngine class parses a Jack program and generates an XML representation
@@ -11,10 +12,17 @@ import java.io.*;
  *   - Classes, variables, and subroutines.
  *   - Statements (let, if, while, do, return).
  *   - Expressions, terms, and lists of expressions.
+ *  Expressions are parsed with an explicit stack instead of recursion (see parseExpression()),
+ *  so deeply nested generated code does not need a bigger thread stack.
  * Usage:
- * - Initialize with a JackTokenizer and output file.
+ * - Initialize with a JackTokenizer and output file or stream (or an XmlSink, e.g. XmlSink.appendingTo()
+ *   for a StringBuilder, or any other ParseListener, e.g. a SyntaxTree.Builder to keep the parsed class
+ *   for several backends).
  * - Call `compileClass()` to start parsing.
  * - Close the engine after parsing to finalize the output.
+ * Error Handling:
+ * - Every token is checked against the grammar before it is written. The first one that does not fit
+ *   stops the parsing with a JackSyntaxException telling its line and column.
  * Example:
  * CompilationEngine engine = new CompilationEngine(tokenizer, outputFile);
  * engine.compileClass();
@@ -22,394 +30,394 @@ import java.io.*;
  */
 public class CompilationEngine {
     private JackTokenizer tokenizer;
-    private PrintWriter writer;
-    private int spaceCheckerLevel = 0; // For XML formatting purposes.
+    private ParseListener listener; // Receives the rules and tokens, e.g. the buffered XML output.
+    private boolean endOfInput; // Set when the input ended while more tokens were needed.
+
+    // Frames of the expression parser: what is being parsed, and how far it got.
+    private static final int EXPRESSION = 0; // Expression not started.
+    private static final int EXPRESSION_NEXT_TERM = 1; // A term of the expression is done, an operator may follow.
+    private static final int TERM = 2; // Term not started.
+    private static final int TERM_CLOSE_PARENTHESIS = 3; // '(' expression or call arguments done, ')' follows.
+    private static final int TERM_CLOSE_BRACKET = 4; // Array index done, ']' follows.
+    private static final int TERM_END = 5; // The term after a unary operator is done.
+    private static final int EXPRESSION_LIST = 6; // Expression list not started.
+    private static final int EXPRESSION_LIST_NEXT = 7; // An expression of the list is done, ',' may follow.
+    private int[] frames = new int[64]; // The expression parser stack, reused by every expression.
+    private int top; // Number of frames on the stack.
 
     /**
      * Creates a new compilation engine with the given input and output.
      * @param tokenizer the JackTokenizer providing the input tokens.
      * @param outputFile is the file where the XML output will be written.
+     * @throws IOException if the output file cannot be opened.
+     */
+    public CompilationEngine(JackTokenizer tokenizer, File outputFile) throws IOException {
+        this(tokenizer, new XmlSink(outputFile));
+    }
+
+    /**
+     * Creates a new compilation engine with the given input and output.
+     * @param tokenizer the JackTokenizer providing the input tokens.
+     * @param out is the stream where the XML output will be written, closed by close().
+     */
+    public CompilationEngine(JackTokenizer tokenizer, OutputStream out) {
+        this(tokenizer, new XmlSink(out, false));
+    }
+
+    /**
+     * Creates a new compilation engine with the given input, writing the XML to the given sink.
+     * @param tokenizer the JackTokenizer providing the input tokens.
+     * @param xml receiving the XML output, closed by close().
      */
-    public CompilationEngine(JackTokenizer tokenizer, File outputFile) throws FileNotFoundException {
+    public CompilationEngine(JackTokenizer tokenizer, XmlSink xml) {
+        this(tokenizer, (ParseListener) xml);
+    }
+
+    /**
+     * Creates a new compilation engine with the given input, reporting what it parses to the given listener.
+     * @param tokenizer the JackTokenizer providing the input tokens.
+     * @param listener receiving the rules and tokens, closed by close() if it is Closeable.
+     */
+    public CompilationEngine(JackTokenizer tokenizer, ParseListener listener) {
         this.tokenizer = tokenizer;
-        this.writer = new PrintWriter(outputFile);
+        this.listener = listener;
     }
 
     /**
      * Compiles a complete class.
      */
     public void compileClass() {
-        writer.println(spaceChecker() + "<class>");
-        spaceCheckerLevel++; // Increase indentation for nested elements.
-        tokenizer.advance();
+        listener.enter(GrammarRule.CLASS);
+        advance();
         // Handles 'class'.
-        writer.println(spaceChecker() + "<keyword> class </keyword>");
-        tokenizer.advance();
+        writeKeyword(SymbolPool.CLASS);
+        advance();
         // Handles 'class' name as an identifier.
-        writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-        tokenizer.advance();
+        writeToken(TokenType.IDENTIFIER);
+        advance();
         //  opening '{'.
-        writer.println(spaceChecker() + "<symbol> { </symbol>");
-        tokenizer.advance();
+        writeSymbol('{');
+        advance();
         // While loops for compiling the class as needed with the relevant compilers.
-        while (tokenizer.tokenType().equals("KEYWORD") && (tokenizer.keyWord().equals("static") || tokenizer.keyWord().equals("field"))) {
+        while (keyword() == SymbolPool.STATIC || keyword() == SymbolPool.FIELD) {
             compileClassVarDec();
         }
-        while (tokenizer.tokenType().equals("KEYWORD") && (tokenizer.keyWord().equals("constructor") || tokenizer.keyWord().equals("function") || tokenizer.keyWord().equals("method"))) {
+        while (keyword() == SymbolPool.CONSTRUCTOR || keyword() == SymbolPool.FUNCTION || keyword() == SymbolPool.METHOD) {
             compileSubroutine();
         }
         // closing '}'.
-        writer.println(spaceChecker() + "<symbol> } </symbol>");
-        spaceCheckerLevel--; // Decrease indentation for closing tags.
-        // Closing tag as needed.
-        writer.println(spaceChecker() + "</class>");
+        writeSymbol('}');
+        listener.exit(GrammarRule.CLASS);
     }
 
     /**
      * Compiles a static variable declaration, or a field declaration.
      */
      public void compileClassVarDec() {
-         writer.println(spaceChecker() + "<classVarDec>");
-         spaceCheckerLevel++; // Increase indentation.
+         listener.enter(GrammarRule.CLASS_VAR_DEC);
          // 'static | field' handling.
-         writer.println(spaceChecker() + "<keyword> " + tokenizer.getCurrentToken() + " </keyword>");
-         tokenizer.advance();
-         // Write type (keyword or identifier)
-         if (tokenizer.tokenType().equals("KEYWORD")) {
-             // Handle keywords: int, char, boolean
-             writer.println(spaceChecker() + "<keyword> " + tokenizer.getCurrentToken() + " </keyword>");
-         } else {
-             // Handle identifiers like SquareGame
-             writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-         }
-         tokenizer.advance();
+         writeToken(TokenType.KEYWORD);
+         advance();
+         // Write type (keywords int, char, boolean or identifiers like SquareGame)
+         writeType(false, false);
+         advance();
          // VarName handling.
-         writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-         tokenizer.advance();
+         writeToken(TokenType.IDENTIFIER);
+         advance();
          // (',' VarName)* handling.
-         while (tokenizer.tokenType().equals("SYMBOL") && tokenizer.symbol() == ',') {
-             writer.println(spaceChecker() + "<symbol> , </symbol>");
-             tokenizer.advance();
-             writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-             tokenizer.advance();
+         while (tokenizer.getTokenType() == TokenType.SYMBOL && tokenizer.symbol() == ',') {
+             writeSymbol(',');
+             advance();
+             writeToken(TokenType.IDENTIFIER);
+             advance();
          }
          // ';' handling.
-         writer.println(spaceChecker() + "<symbol> ; </symbol>");
-         tokenizer.advance();
-         spaceCheckerLevel--; // Decrease indentation.
-         writer.println(spaceChecker() + "</classVarDec>");
+         writeSymbol(';');
+         advance();
+         listener.exit(GrammarRule.CLASS_VAR_DEC);
      }
 
     /**
      * Compiles a complete method, function or a constructor.
      */
      public void compileSubroutine() {
-         writer.println(spaceChecker() + "<subroutineDec>");
-         spaceCheckerLevel++; // Increase indentation.
+         listener.enter(GrammarRule.SUBROUTINE_DEC);
          // ('constructor' | 'function' | 'method') handling.
-         writer.println(spaceChecker() + "<keyword> " + tokenizer.getCurrentToken() + " </keyword>");
-         tokenizer.advance();
+         writeToken(TokenType.KEYWORD);
+         advance();
          // ('void' | type) handling.
-         if (tokenizer.tokenType().equals("KEYWORD")) {
-             writer.println(spaceChecker() + "<keyword> " + tokenizer.getCurrentToken() + " </keyword>");
-         } else if (tokenizer.tokenType().equals("IDENTIFIER")) {
-             writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-         }
-         tokenizer.advance();
+         writeType(true, false);
+         advance();
          // subroutine name handling.
-         writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-         tokenizer.advance();
+         writeToken(TokenType.IDENTIFIER);
+         advance();
          // '(' handling/
-         writer.println(spaceChecker() + "<symbol> ( </symbol>");
-         tokenizer.advance();
+         writeSymbol('(');
+         advance();
          // Parameter list handling with the relevant compile method.
          compileParameterList();
          // ')' handling/
-         writer.println(spaceChecker() + "<symbol> ) </symbol>");
-         tokenizer.advance();
+         writeSymbol(')');
+         advance();
          // subroutine body handling with the relevant compile method.
          compileSubroutineBody();
-         spaceCheckerLevel--; // Decrease indentation.
-         writer.println(spaceChecker() + "</subroutineDec>");
+         listener.exit(GrammarRule.SUBROUTINE_DEC);
      }
 
     /**
      * Compiles a (possibly empty) parameter list. Does not handle the enclosing parentheses tokens '(' and ')'.
      */
      public  void compileParameterList() {
-         writer.println(spaceChecker() + "<parameterList>");
-         spaceCheckerLevel++; // Ensuring spacing.
+         listener.enter(GrammarRule.PARAMETER_LIST);
          // Checks if the list is not empty.
-         if (!(tokenizer.tokenType().equals("SYMBOL") && tokenizer.symbol() == ')')) {
+         if (!(tokenizer.getTokenType() == TokenType.SYMBOL && tokenizer.symbol() == ')')) {
              // Type handling.
-             writer.println(spaceChecker() + "<keyword> " + tokenizer.getCurrentToken() + " </keyword>");
-             tokenizer.advance();
+             writeType(false, true);
+             advance();
              // Variable name handling.
-             writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-             tokenizer.advance();
+             writeToken(TokenType.IDENTIFIER);
+             advance();
              // (',' type VarName)* handling.
-             while (tokenizer.tokenType().equals("SYMBOL") && (tokenizer.symbol() == ',')) {
-                 writer.println(spaceChecker() + "<symbol> , </symbol>");
-                 tokenizer.advance();
+             while (tokenizer.getTokenType() == TokenType.SYMBOL && (tokenizer.symbol() == ',')) {
+                 writeSymbol(',');
+                 advance();
                  // Type handling.
-                 writer.println(spaceChecker() + "<keyword> " + tokenizer.getCurrentToken() + " </keyword>");
-                 tokenizer.advance();
+                 writeType(false, true);
+                 advance();
                  // Variable name handling.
-                 writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-                 tokenizer.advance();
+                 writeToken(TokenType.IDENTIFIER);
+                 advance();
              }
          }
-         spaceCheckerLevel--; // Ensuring spacing.
-         writer.println(spaceChecker() + "</parameterList>"); // closing the tokenizing paragraph.
+         listener.exit(GrammarRule.PARAMETER_LIST); // closing the tokenizing paragraph.
      }
 
     /**
      * Compiles a subroutine's body.
      */
      public void compileSubroutineBody() {
-         writer.println(spaceChecker() + "<subroutineBody>");
-         spaceCheckerLevel++; // Ensuring spacing.
+         listener.enter(GrammarRule.SUBROUTINE_BODY);
          // '{' handling.
-         writer.println(spaceChecker() + "<symbol> { </symbol>");
-         tokenizer.advance();
+         writeSymbol('{');
+         advance();
          // Variable declarations occurrences (*) handling.
-         while (tokenizer.tokenType().equals("KEYWORD") && tokenizer.keyWord().equals("var")) {
+         while (keyword() == SymbolPool.VAR) {
              compileVarDec();
          }
          // handling statements with relevant compiler.
          compileStatements();
          // '}' handling.
-         writer.println(spaceChecker() + "<symbol> } </symbol>");
-         tokenizer.advance();
-         spaceCheckerLevel--; // Ensuring spacing.
-         writer.println(spaceChecker() + "</subroutineBody>"); // closing the tokenizing paragraph.
+         writeSymbol('}');
+         advance();
+         listener.exit(GrammarRule.SUBROUTINE_BODY); // closing the tokenizing paragraph.
      }
 
     /**
      * Compiles a var declaration.
      */
      public void compileVarDec() {
-         writer.println(spaceChecker() + "<varDec>");
-         spaceCheckerLevel++; // Ensuring spacing.
+         listener.enter(GrammarRule.VAR_DEC);
          // 'var' handling.
-         writer.println(spaceChecker() + "<keyword> var </keyword>");
-         tokenizer.advance();
-         // Write type (keyword or identifier)
-         if (tokenizer.tokenType().equals("KEYWORD")) {
-             // Handle keywords: int, char, boolean
-             writer.println(spaceChecker() + "<keyword> " + tokenizer.getCurrentToken() + " </keyword>");
-         } else {
-             // Handle identifiers like SquareGame
-             writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-         }
-         tokenizer.advance();
+         writeToken(TokenType.KEYWORD);
+         advance();
+         // Write type (keywords int, char, boolean or identifiers like SquareGame)
+         writeType(false, false);
+         advance();
          // variable name handling.
-         writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-         tokenizer.advance();
+         writeToken(TokenType.IDENTIFIER);
+         advance();
          // (',' VarName occurrences) handling.
-         while (tokenizer.tokenType().equals("SYMBOL") && tokenizer.symbol() == ',') {
-             writer.println(spaceChecker() + "<symbol> , </symbol>");
-             tokenizer.advance();
+         while (tokenizer.getTokenType() == TokenType.SYMBOL && tokenizer.symbol() == ',') {
+             writeSymbol(',');
+             advance();
              // VarName handling.
-             writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-             tokenizer.advance();
+             writeToken(TokenType.IDENTIFIER);
+             advance();
          }
-         writer.println(spaceChecker() + "<symbol> ; </symbol>");
-         tokenizer.advance();
-         spaceCheckerLevel--; // Ensuring spacing.
-         writer.println(spaceChecker() + "</varDec>");
+         writeSymbol(';');
+         advance();
+         listener.exit(GrammarRule.VAR_DEC);
      }
 
     /**
      * Compiles a sequence of statements. does not handle the enclosing curly bracket tokens '{' and '}'.
      */
     public void compileStatements() {
-        writer.println(spaceChecker() + "<statements>");
-        spaceCheckerLevel++; // Ensuring spacing.
+        listener.enter(GrammarRule.STATEMENTS);
         // Process each statement based on its keyword.
-        while (tokenizer.tokenType().equals("KEYWORD") && (
-                tokenizer.keyWord().equals("let") || tokenizer.keyWord().equals("if") || tokenizer.keyWord().equals("while") || tokenizer.keyWord().equals("do") || tokenizer.keyWord().equals("return"))) {
-            switch (tokenizer.keyWord()) {
-                case "let":
+        while (true) {
+            switch (keyword()) {
+                case SymbolPool.LET:
                     compileLet();
                     break;
-                case "if":
+                case SymbolPool.IF:
                     compileIf();
                     break;
-                case "while":
+                case SymbolPool.WHILE:
                     compileWhile();
                     break;
-                case "do":
+                case SymbolPool.DO:
                     compileDo();
                     break;
-                case "return":
+                case SymbolPool.RETURN:
                     compileReturn();
                     break;
+                default:
+                    listener.exit(GrammarRule.STATEMENTS);
+                    return;
             }
         }
-        spaceCheckerLevel--; // Ensuring spacing.
-        writer.println(spaceChecker() + "</statements>");
     }
 
     /**
      * Compiles a let statement.
      */
      public void compileLet() {
-         writer.println(spaceChecker() + "<letStatement>");
-         spaceCheckerLevel++; // Ensuring spacing.
+         listener.enter(GrammarRule.LET_STATEMENT);
          // Handling 'let' keyword.
-         writer.println(spaceChecker() + "<keyword> let </keyword>");
-         tokenizer.advance();
+         writeToken(TokenType.KEYWORD);
+         advance();
          // Var name handling.
-         writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-         tokenizer.advance();
+         writeToken(TokenType.IDENTIFIER);
+         advance();
          // Case of array.
-         if (tokenizer.tokenType().equals("SYMBOL") && tokenizer.symbol() == '[') {
-             writer.println(spaceChecker() + "<symbol> [ </symbol>");
-             tokenizer.advance();
+         if (tokenizer.getTokenType() == TokenType.SYMBOL && tokenizer.symbol() == '[') {
+             writeSymbol('[');
+             advance();
              // Handle the expression inside the brackets with the relevant compiler method.
              compileExpression();
              // Closing the brackets as needed.
-             writer.println(spaceChecker() + "<symbol> ] </symbol>");
-             tokenizer.advance();
+             writeSymbol(']');
+             advance();
          }
          // Handling '=' sign of a let statement. notice we'll get here in any case whether it's an array or whether it's not.
-         writer.println(spaceChecker() + "<symbol> = </symbol>");
-         tokenizer.advance();
+         writeSymbol('=');
+         advance();
          // Handle the expression after '='.
          compileExpression();
          // Close the line with ';'.
-         writer.println(spaceChecker() + "<symbol> ; </symbol>");
-         tokenizer.advance();
-         spaceCheckerLevel--; // Ensuring spacing.
-         writer.println(spaceChecker() + "</letStatement>"); // Closing as needed.
+         writeSymbol(';');
+         advance();
+         listener.exit(GrammarRule.LET_STATEMENT); // Closing as needed.
      }
 
     /**
      * Compiles an if statement, possibly with a trailing else clause.
      */
      public void compileIf() {
-         writer.println(spaceChecker() + "<ifStatement>");
-         spaceCheckerLevel++; // Ensuring spacing.
+         listener.enter(GrammarRule.IF_STATEMENT);
          // Handling 'if' keyword.
-         writer.println(spaceChecker() + "<keyword> if </keyword>");
-         tokenizer.advance();
+         writeToken(TokenType.KEYWORD);
+         advance();
          // '(' handling.
-         writer.println(spaceChecker() + "<symbol> ( </symbol>");
-         tokenizer.advance();
+         writeSymbol('(');
+         advance();
          // Expression handling with relevant compile method for the condition inside the brackets.
          compileExpression();
          // ')' handling.
-         writer.println(spaceChecker() + "<symbol> ) </symbol>");
-         tokenizer.advance();
+         writeSymbol(')');
+         advance();
          // '{' handling.
-         writer.println(spaceChecker() + "<symbol> { </symbol>");
-         tokenizer.advance();
+         writeSymbol('{');
+         advance();
          // Statements handling with the relevant compile method for the 'if' block.
          compileStatements();
          // '}' handling.
-         writer.println(spaceChecker() + "<symbol> } </symbol>");
-         tokenizer.advance();
+         writeSymbol('}');
+         advance();
          // Case of 'else'.
-         if (tokenizer.tokenType().equals("KEYWORD") && tokenizer.keyWord().equals("else")) {
+         if (keyword() == SymbolPool.ELSE) {
              // 'else' handling.
-             writer.println(spaceChecker() + "<keyword> else </keyword>");
-             tokenizer.advance();
+             writeToken(TokenType.KEYWORD);
+             advance();
              // '{' handling.
-             writer.println(spaceChecker() + "<symbol> { </symbol>");
-             tokenizer.advance();
+             writeSymbol('{');
+             advance();
              // Statements handling with the relevant compile method for the 'else' block.
              compileStatements();
              // '}' handling.
-             writer.println(spaceChecker() + "<symbol> } </symbol>");
-             tokenizer.advance();
+             writeSymbol('}');
+             advance();
          }
-         spaceCheckerLevel--; // Ensuring spaces;
-         writer.println(spaceChecker() + "</ifStatement>"); // Closing as needed.
+         listener.exit(GrammarRule.IF_STATEMENT); // Closing as needed.
      }
 
     /**
      * Compiles a while statement.
      */
      public void compileWhile() {
-         writer.println(spaceChecker() + "<whileStatement>");
-         spaceCheckerLevel++; // Ensuring spaces.
+         listener.enter(GrammarRule.WHILE_STATEMENT);
          // Handling 'while' keyword.
-         writer.println(spaceChecker() + "<keyword> while </keyword>");
-         tokenizer.advance();
+         writeToken(TokenType.KEYWORD);
+         advance();
          // '(' handling.
-         writer.println(spaceChecker() + "<symbol> ( </symbol>");
-         tokenizer.advance();
+         writeSymbol('(');
+         advance();
          // Expression handling with relevant compile method for the condition inside the brackets.
          compileExpression();
          // ')' handling.
-         writer.println(spaceChecker() + "<symbol> ) </symbol>");
-         tokenizer.advance();
+         writeSymbol(')');
+         advance();
          // '{' handling.
-         writer.println(spaceChecker() + "<symbol> { </symbol>");
-         tokenizer.advance();
+         writeSymbol('{');
+         advance();
          // Statements handling with the relevant compile method for the 'while' block.
          compileStatements();
          // '}' handling.
-         writer.println(spaceChecker() + "<symbol> } </symbol>");
-         tokenizer.advance();
-         spaceCheckerLevel--; // Ensuring spaces.
-         writer.println(spaceChecker() + "</whileStatement>"); // Closing as needed.
+         writeSymbol('}');
+         advance();
+         listener.exit(GrammarRule.WHILE_STATEMENT); // Closing as needed.
      }
 
     /**
      * Compile a do statement.
      */
      public void compileDo() {
-         writer.println(spaceChecker() + "<doStatement>");
-         spaceCheckerLevel++; // Ensuring spaces.
+         listener.enter(GrammarRule.DO_STATEMENT);
          // Handling 'do' keyword.
-         writer.println(spaceChecker() + "<keyword> do </keyword>");
-         tokenizer.advance();
+         writeToken(TokenType.KEYWORD);
+         advance();
          // Subroutine handling.
-         writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-         tokenizer.advance();
+         writeToken(TokenType.IDENTIFIER);
+         advance();
          // '.' when calling method.
-         if (tokenizer.tokenType().equals("SYMBOL") && tokenizer.symbol() == '.') {
-             writer.println(spaceChecker() + "<symbol> . </symbol>");
-             tokenizer.advance();
+         if (tokenizer.getTokenType() == TokenType.SYMBOL && tokenizer.symbol() == '.') {
+             writeSymbol('.');
+             advance();
              // Handling the subroutine name.
-             writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-             tokenizer.advance();
+             writeToken(TokenType.IDENTIFIER);
+             advance();
          }
          // '(' handling.
-         writer.println(spaceChecker() + "<symbol> ( </symbol>");
-         tokenizer.advance();
+         writeSymbol('(');
+         advance();
          // Use relevant compiler for compiling list of expressions.
          compileExpressionList();
          // ')' handling.
-         writer.println(spaceChecker() + "<symbol> ) </symbol>");
-         tokenizer.advance();
+         writeSymbol(')');
+         advance();
          // Closing with ';'.
-         writer.println(spaceChecker() + "<symbol> ; </symbol>");
-         tokenizer.advance();
-         spaceCheckerLevel--; // Ensuring correct spacing.
-         writer.println(spaceChecker() + "</doStatement>"); // Closing as needed.
+         writeSymbol(';');
+         advance();
+         listener.exit(GrammarRule.DO_STATEMENT); // Closing as needed.
      }
 
     /**
      * Compiles a return statement.
      */
      public void compileReturn() {
-         writer.println(spaceChecker() + "<returnStatement>");
-         spaceCheckerLevel++; // Ensuring correct spacing.
+         listener.enter(GrammarRule.RETURN_STATEMENT);
          // Handling 'return' keyword.
-         writer.println(spaceChecker() + "<keyword> return </keyword>");
-         tokenizer.advance();
+         writeToken(TokenType.KEYWORD);
+         advance();
          // Covers an expression case.
-         if (!(tokenizer.tokenType().equals("SYMBOL") && tokenizer.symbol() == ';')) {
+         if (!(tokenizer.getTokenType() == TokenType.SYMBOL && tokenizer.symbol() == ';')) {
              compileExpression();
          }
          // Closing with ';'.
-         writer.println(spaceChecker() + "<symbol> ; </symbol>");
-         tokenizer.advance();
-         spaceCheckerLevel--; // Ensuring correct spacing.
-         writer.println(spaceChecker() + "</returnStatement>"); // Closing as needed.
+         writeSymbol(';');
+         advance();
+         listener.exit(GrammarRule.RETURN_STATEMENT); // Closing as needed.
      }
 
     /**
@@ -424,30 +432,7 @@ public class CompilationEngine {
      * Compiles an expression.
      */
     public void compileExpression() {
-        writer.println(spaceChecker() + "<expression>");
-        spaceCheckerLevel++; // Ensuring correct spacing.
-        // Compile the first term
-        compileTerm();
-        // Handles occurrences of (op term)
-        while (tokenizer.tokenType().equals("SYMBOL") && isOperator(tokenizer.symbol())) {
-            // Get the current operator
-            String operator = tokenizer.getCurrentToken();
-            // Escape special characters for XML
-            if (operator.equals("<")) {
-                operator = "&lt;";
-            } else if (operator.equals(">")) {
-                operator = "&gt;";
-            } else if (operator.equals("&")) {
-                operator = "&amp;";
-            }
-            // Write the operator to the XML
-            writer.println(spaceChecker() + "<symbol> " + operator + " </symbol>");
-            tokenizer.advance();
-            // Compile the next term
-            compileTerm();
-        }
-        spaceCheckerLevel--; // Ensuring spacing.
-        writer.println(spaceChecker() + "</expression>");
+        parseExpression(EXPRESSION);
     }
 
     /**
@@ -456,67 +441,7 @@ public class CompilationEngine {
      * any other token is not part pf this term and should not be advance over.
      */
      public void compileTerm() {
-         writer.println(spaceChecker() + "<term>");
-         spaceCheckerLevel++; // Spacing purposes.
-         // Use switch case for the different token types.
-         switch (tokenizer.tokenType()) {
-             case "INT_CONST":
-                 writer.println(spaceChecker() + "<integerConstant> " + tokenizer.getCurrentToken() + " </integerConstant>");
-                 tokenizer.advance();
-                 break;
-             case "STRING_CONST":
-                 writer.println(spaceChecker() + "<stringConstant> " + tokenizer.stringVal() + " </stringConstant>");
-                 tokenizer.advance();
-                 break;
-             case "KEYWORD":
-                 writer.println(spaceChecker() + "<keyword> " + tokenizer.getCurrentToken() + " </keyword>");
-                 tokenizer.advance();
-                 break;
-             case "SYMBOL":
-                 if (tokenizer.symbol() == '(') {
-                     // Case of expression inside brackets.
-                     writer.println(spaceChecker() + "<symbol> ( </symbol>");
-                     tokenizer.advance();
-                     compileExpression();
-                     writer.println(spaceChecker() + "<symbol> ) </symbol>");
-                     tokenizer.advance();
-                 } else if (tokenizer.symbol() == '-' || tokenizer.symbol() == '~') {
-                     // Case of unary operator and term.
-                     writer.println(spaceChecker() + "<symbol> " + tokenizer.getCurrentToken() + " </symbol>");
-                     tokenizer.advance();
-                     compileTerm();
-                 }
-                 break;
-             case "IDENTIFIER":
-                 writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-                 tokenizer.advance();
-                 // Checks for accessing to an array.
-                 if (tokenizer.symbol() == '[') {
-                     writer.println(spaceChecker() + "<symbol> [ </symbol>");
-                     tokenizer.advance();
-                     compileExpression();
-                     writer.println(spaceChecker() + "<symbol> ] </symbol>");
-                     tokenizer.advance();
-                     // Handling some Subroutine call.
-                 } else if (tokenizer.symbol() == '(' || tokenizer.symbol() == '.') {
-                     if (tokenizer.symbol() == '.') {
-                         writer.println(spaceChecker() + "<symbol> . </symbol>");
-                         tokenizer.advance();
-                         writer.println(spaceChecker() + "<identifier> " + tokenizer.getCurrentToken() + " </identifier>");
-                         tokenizer.advance();
-                     }
-                     writer.println(spaceChecker() + "<symbol> ( </symbol>");
-                     tokenizer.advance();
-                     compileExpressionList();
-                     writer.println(spaceChecker() + "<symbol> ) </symbol>");
-                     tokenizer.advance();
-                 }
-                 break;
-             default:
-                 break;
-         }
-         spaceCheckerLevel--; // Spacing purposes.
-         writer.println(spaceChecker() + "</term>");
+         parseExpression(TERM);
      }
 
     /**
@@ -524,35 +449,277 @@ public class CompilationEngine {
      * @return the number of expressions in the list.
      */
     public int compileExpressionList() {
-        writer.println(spaceChecker() + "<expressionList>");
-        spaceCheckerLevel++; // Spacing.
+        return parseExpression(EXPRESSION_LIST);
+    }
+
+    /**
+     * Parses an expression, a term or an expression list, with everything nested in it.
+     * Instead of compileExpression() -> compileTerm() -> compileExpression() calls, the work still to do
+     * is kept on an explicit stack of frames (see the frame constants), so the Java stack does not grow
+     * with the nesting and any depth of parentheses, unary operators, array entries and calls is fine.
+     * The listener gets exactly the calls the recursive methods made.
+     * @param start EXPRESSION, TERM or EXPRESSION_LIST.
+     * @return for an expression list, the number of expressions in it.
+     */
+    private int parseExpression(int start) {
         int expressionCount = 0;
-        // Check if the list is not empty.
-        if (!(tokenizer.tokenType().equals("SYMBOL") && tokenizer.symbol() == ')')) {
-            compileExpression();
-            expressionCount++;
-            // Handle ',' separated expressions.
-            while (tokenizer.tokenType().equals("SYMBOL") && tokenizer.symbol() == ',') {
-                writer.println(spaceChecker() + "<symbol> , </symbol>");
-                tokenizer.advance();
-                compileExpression();
-                expressionCount++;
+        top = 0;
+        push(start);
+        while (top > 0) {
+            switch (frames[top - 1]) {
+                case EXPRESSION:
+                    listener.enter(GrammarRule.EXPRESSION);
+                    // Compile the first term, then the occurrences of (op term).
+                    frames[top - 1] = EXPRESSION_NEXT_TERM;
+                    push(TERM);
+                    break;
+                case EXPRESSION_NEXT_TERM:
+                    if (tokenizer.getTokenType() == TokenType.SYMBOL && isOperator(tokenizer.symbol())) {
+                        // Write the operator to the XML, the sink escapes '<', '>' and '&'.
+                        listener.symbol(tokenizer.symbol());
+                        advance();
+                        push(TERM);
+                    } else {
+                        listener.exit(GrammarRule.EXPRESSION);
+                        top--;
+                    }
+                    break;
+                case TERM:
+                    listener.enter(GrammarRule.TERM);
+                    top--; // Replaced by whatever remains to be done for this term.
+                    startTerm();
+                    break;
+                case TERM_CLOSE_PARENTHESIS:
+                    writeSymbol(')');
+                    advance();
+                    listener.exit(GrammarRule.TERM);
+                    top--;
+                    break;
+                case TERM_CLOSE_BRACKET:
+                    writeSymbol(']');
+                    advance();
+                    listener.exit(GrammarRule.TERM);
+                    top--;
+                    break;
+                case TERM_END:
+                    listener.exit(GrammarRule.TERM);
+                    top--;
+                    break;
+                case EXPRESSION_LIST:
+                    listener.enter(GrammarRule.EXPRESSION_LIST);
+                    // Check if the list is not empty.
+                    if (!(tokenizer.getTokenType() == TokenType.SYMBOL && tokenizer.symbol() == ')')) {
+                        frames[top - 1] = EXPRESSION_LIST_NEXT;
+                        push(EXPRESSION);
+                    } else {
+                        listener.exit(GrammarRule.EXPRESSION_LIST);
+                        top--;
+                    }
+                    break;
+                default: // EXPRESSION_LIST_NEXT, an expression of the list is done.
+                    if (top == 1) {
+                        expressionCount++; // Only the list this call was made for is counted.
+                    }
+                    // Handle ',' separated expressions.
+                    if (tokenizer.getTokenType() == TokenType.SYMBOL && tokenizer.symbol() == ',') {
+                        writeSymbol(',');
+                        advance();
+                        push(EXPRESSION);
+                    } else {
+                        listener.exit(GrammarRule.EXPRESSION_LIST);
+                        top--;
+                    }
+                    break;
             }
         }
-        spaceCheckerLevel--; // Spacing.
-        writer.println(spaceChecker() + "</expressionList>");
         return expressionCount;
     }
 
     /**
-     * Helper function for tracking the spaces needed in the code.
-     * @return the space as needed in XML.
+     * Handles the first tokens of a term, whose rule was just entered. A term which is complete
+     * is exited right away, otherwise the frames for its remaining parts are pushed.
+     */
+    private void startTerm() {
+        if (endOfInput) {
+            throw error("a term");
+        }
+        // Use switch case for the different token types.
+        switch (tokenizer.getTokenType()) {
+            case INT_CONST:
+                writeToken(TokenType.INT_CONST);
+                advance();
+                listener.exit(GrammarRule.TERM);
+                break;
+            case STRING_CONST:
+                writeStringConstant();
+                advance();
+                listener.exit(GrammarRule.TERM);
+                break;
+            case KEYWORD:
+                // Only the keyword constants are terms.
+                if (!isKeywordConstant(keyword())) {
+                    throw error("a term");
+                }
+                writeToken(TokenType.KEYWORD);
+                advance();
+                listener.exit(GrammarRule.TERM);
+                break;
+            case SYMBOL:
+                if (tokenizer.symbol() == '(') {
+                    // Case of expression inside brackets.
+                    writeSymbol('(');
+                    advance();
+                    push(TERM_CLOSE_PARENTHESIS);
+                    push(EXPRESSION);
+                } else if (tokenizer.symbol() == '-' || tokenizer.symbol() == '~') {
+                    // Case of unary operator and term.
+                    listener.symbol(tokenizer.symbol());
+                    advance();
+                    push(TERM_END);
+                    push(TERM);
+                } else {
+                    throw error("a term");
+                }
+                break;
+            default: // IDENTIFIER
+                writeToken(TokenType.IDENTIFIER);
+                advance();
+                // Checks for accessing to an array.
+                if (tokenizer.symbol() == '[') {
+                    writeSymbol('[');
+                    advance();
+                    push(TERM_CLOSE_BRACKET);
+                    push(EXPRESSION);
+                    // Handling some Subroutine call.
+                } else if (tokenizer.symbol() == '(' || tokenizer.symbol() == '.') {
+                    if (tokenizer.symbol() == '.') {
+                        writeSymbol('.');
+                        advance();
+                        writeToken(TokenType.IDENTIFIER);
+                        advance();
+                    }
+                    writeSymbol('(');
+                    advance();
+                    push(TERM_CLOSE_PARENTHESIS);
+                    push(EXPRESSION_LIST);
+                } else {
+                    listener.exit(GrammarRule.TERM);
+                }
+                break;
+        }
+    }
+
+    /**
+     * Pushes a frame of the expression parser, growing the stack as needed.
+     */
+    private void push(int frame) {
+        if (top == frames.length) {
+            frames = Arrays.copyOf(frames, top * 2);
+        }
+        frames[top++] = frame;
+    }
+
+    /**
+     * Writes the current token as a terminal element, straight from the tokenizer's buffer.
+     * @param type decides the element name, and the current token must be of this type.
+     */
+    private void writeToken(TokenType type) {
+        if (endOfInput || tokenizer.getTokenType() != type) {
+            throw error(type == TokenType.IDENTIFIER ? "a name" : type.xmlTag());
+        }
+        listener.terminal(type, tokenizer.source(), tokenizer.tokenStart(), tokenizer.tokenLength());
+    }
+
+    /**
+     * Writes the current token, which must be the given keyword.
+     */
+    private void writeKeyword(int keyword) {
+        if (keyword() != keyword) {
+            throw error("'" + JackCharacters.KEYWORDS[keyword] + "'");
+        }
+        writeToken(TokenType.KEYWORD);
+    }
+
+    /**
+     * Writes the current token, which must be the given symbol.
+     */
+    private void writeSymbol(char symbol) {
+        if (endOfInput || tokenizer.getTokenType() != TokenType.SYMBOL || tokenizer.symbol() != symbol) {
+            throw error("'" + symbol + "'");
+        }
+        listener.symbol(symbol);
+    }
+
+    /**
+     * Writes a type: int, char, boolean or a class name.
+     * @param returnType whether 'void' is allowed too.
+     * @param asKeyword whether a class name is written as a keyword element, as parameter lists always did.
+     */
+    private void writeType(boolean returnType, boolean asKeyword) {
+        TokenType type = endOfInput ? null : tokenizer.getTokenType();
+        if (type == TokenType.IDENTIFIER) {
+            listener.terminal(asKeyword ? TokenType.KEYWORD : TokenType.IDENTIFIER,
+                    tokenizer.source(), tokenizer.tokenStart(), tokenizer.tokenLength());
+            return;
+        }
+        int keyword = keyword();
+        if (!(keyword == SymbolPool.INT || keyword == SymbolPool.CHAR || keyword == SymbolPool.BOOLEAN || (returnType && keyword == SymbolPool.VOID))) {
+            throw error(returnType ? "a return type" : "a type");
+        }
+        writeToken(TokenType.KEYWORD);
+    }
+
+    /**
+     * @return true for the keywords which are terms on their own.
      */
-    private String spaceChecker() {
-        return "  ".repeat(spaceCheckerLevel); // Two spaces per level
+    private static boolean isKeywordConstant(int keyword) {
+        return keyword == SymbolPool.TRUE || keyword == SymbolPool.FALSE || keyword == SymbolPool.NULL || keyword == SymbolPool.THIS;
     }
 
-    public void close() {
-        writer.close();
+    /**
+     * @return the SymbolPool id of the current token if it is a keyword, else -1. Compared as an int, no String needed.
+     */
+    private int keyword() {
+        if (endOfInput || tokenizer.getTokenType() != TokenType.KEYWORD) {
+            return -1;
+        }
+        return tokenizer.symbolId();
+    }
+
+    /**
+     * Moves to the next token, remembering when there is none although the grammar needs one.
+     */
+    private void advance() {
+        if (tokenizer.hasMoreTokens()) {
+            tokenizer.advance();
+        } else {
+            endOfInput = true;
+        }
+    }
+
+    /**
+     * @param expected what the grammar allows at the current token, e.g. "';'" or "a term".
+     * @return the error to throw, at the position of the current token.
+     */
+    private JackSyntaxException error(String expected) {
+        String found = endOfInput || tokenizer.tokenCount() == 0 ? "the end of the input" : "'" + tokenizer.getCurrentToken() + "'";
+        return new JackSyntaxException(tokenizer.line(), tokenizer.column(), "expected " + expected + " but found " + found);
+    }
+
+    /**
+     * Writes the current string constant without its quotes.
+     */
+    private void writeStringConstant() {
+        listener.terminal(TokenType.STRING_CONST, tokenizer.source(), tokenizer.tokenStart() + 1, tokenizer.stringValLength());
+    }
+
+    /**
+     * Flushes the output and closes it.
+     * @throws IOException if the output cannot be written.
+     */
+    public void close() throws IOException {
+        if (listener instanceof Closeable closeable) {
+            closeable.close();
+        }
     }
 }
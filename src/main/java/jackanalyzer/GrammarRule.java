@@ -0,0 +1,36 @@
+package jackanalyzer;
+
+/**
+ * The non-terminal rules of the Jack grammar that show up as elements in the parse tree XML.
+ * Each rule knows its XML element name, e.g. LET_STATEMENT is written as {@code <letStatement>}.
+ */
+public enum GrammarRule {
+    CLASS("class"),
+    CLASS_VAR_DEC("classVarDec"),
+    SUBROUTINE_DEC("subroutineDec"),
+    PARAMETER_LIST("parameterList"),
+    SUBROUTINE_BODY("subroutineBody"),
+    VAR_DEC("varDec"),
+    STATEMENTS("statements"),
+    LET_STATEMENT("letStatement"),
+    IF_STATEMENT("ifStatement"),
+    WHILE_STATEMENT("whileStatement"),
+    DO_STATEMENT("doStatement"),
+    RETURN_STATEMENT("returnStatement"),
+    EXPRESSION("expression"),
+    TERM("term"),
+    EXPRESSION_LIST("expressionList");
+
+    private final String xmlTag; // The element name used for this rule in the XML output.
+
+    GrammarRule(String xmlTag) {
+        this.xmlTag = xmlTag;
+    }
+
+    /**
+     * @return the XML element name of this rule, e.g. "classVarDec".
+     */
+    public String xmlTag() {
+        return xmlTag;
+    }
+}
@@ -0,0 +1,87 @@
+package jackanalyzer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.*;
+
+/**
+ * The GzipArchive class collects all the outputs of a --gzip-archive run in one gzip file.
+ *
+ * How it works:
+ * - Every output file becomes one gzip member, and gzip allows any number of members one after
+ *   the other. "gunzip -c" prints them all, and each member's header names its file.
+ * - A member is compressed in memory by the worker which parses the file, so compression runs in
+ *   parallel, and then appended whole. The members of a file that had a syntax error are never added.
+ * - Members are appended in the order the files are finished, which depends on the jobs.
+ */
+final class GzipArchive implements OutputArchive {
+    private final FileChannel channel;
+    private final Path root; // Member names are relative to it.
+
+    /**
+     * Creates the archive, replacing an existing file.
+     * @param file of the archive.
+     * @param root the analyzed directory.
+     * @throws IOException if the file cannot be created.
+     */
+    GzipArchive(File file, Path root) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.root = root;
+    }
+
+    @Override
+    public Member entry(File output) throws IOException {
+        return new Member(OutputArchive.entryName(root, output));
+    }
+
+    @Override
+    public synchronized void add(Entry entry) throws IOException {
+        Member member = (Member) entry;
+        member.close();
+        ByteBuffer bytes = ByteBuffer.wrap(member.compressed.toByteArray());
+        while (bytes.hasRemaining()) {
+            channel.write(bytes);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * One output file of the archive, compressed in memory until it is added.
+     */
+    static final class Member implements Entry {
+        private final String name; // The path of the output, relative to the analyzed directory.
+        private final ByteArrayOutputStream compressed = new ByteArrayOutputStream(1 << 14);
+        private final GzipChannel gzip;
+
+        private Member(String name) throws IOException {
+            this.name = name;
+            this.gzip = new GzipChannel(Channels.newChannel(compressed), name, true);
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            return gzip.write(source);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return gzip.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            gzip.close();
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package jackanalyzer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.*;
+
+/**
+ * The GzipChannel class compresses everything written to it into gzip format (RFC 1952)
+ * on another channel, for the --gzip and --gzip-archive outputs.
+ *
+ * How it works:
+ * - It does what GZIPOutputStream does, but on ByteBuffers: the XmlSink's direct buffer is handed
+ *   to the Deflater as is, and the compressed bytes are collected in a 64 KB direct buffer which is
+ *   written to the target in one call when full. No byte[] copies on the way.
+ * - The header may carry the original file name, so every member of an archive knows its file.
+ * - BEST_SPEED compresses the repetitive XML almost as well as the default level, several times faster.
+ */
+final class GzipChannel implements WritableByteChannel {
+    private static final int BUFFER_SIZE = 1 << 16; // 64 KB per write to the target.
+    private static final byte[] NO_INPUT = new byte[0];
+
+    private final WritableByteChannel target;
+    private final boolean closeTarget; // false when the target is shared, e.g. by the members of an archive.
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true); // Raw deflate, the gzip framing is ours.
+    private final CRC32 crc = new CRC32();
+    private final ByteBuffer output = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    private long size; // Uncompressed bytes, for the trailer.
+    private boolean open = true;
+
+    /**
+     * Starts a gzip stream on the target.
+     * @param target receiving the compressed bytes.
+     * @param fileName stored in the header as the original file name, or null.
+     * @param closeTarget whether close() closes the target too.
+     * @throws IOException if the header cannot be written.
+     */
+    GzipChannel(WritableByteChannel target, String fileName, boolean closeTarget) throws IOException {
+        this.target = target;
+        this.closeTarget = closeTarget;
+        output.put(new byte[]{0x1f, (byte) 0x8b, Deflater.DEFLATED, (byte) (fileName != null ? 0x08 : 0)}); // Magic, method, FNAME flag.
+        output.put(new byte[]{0, 0, 0, 0, 0, (byte) 255}); // No modification time, no extra flags, unknown OS.
+        if (fileName != null) {
+            output.put(fileName.getBytes(StandardCharsets.ISO_8859_1)).put((byte) 0); // Names are Latin-1 in gzip.
+        }
+    }
+
+    @Override
+    public int write(ByteBuffer source) throws IOException {
+        int length = source.remaining();
+        crc.update(source.duplicate());
+        size += length;
+        deflater.setInput(source); // Advances the position of source as it is consumed.
+        while (!deflater.needsInput()) {
+            deflate();
+        }
+        deflater.setInput(NO_INPUT); // The Deflater keeps the buffer, which the caller is about to clear and refill.
+        return length;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * Finishes the gzip stream: the rest of the compressed data and the trailer.
+     * @throws IOException if writing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        if (!open) {
+            return;
+        }
+        open = false;
+        try {
+            deflater.finish();
+            while (!deflater.finished()) {
+                deflate();
+            }
+            if (output.remaining() < 8) {
+                drain();
+            }
+            output.order(ByteOrder.LITTLE_ENDIAN).putInt((int) crc.getValue()).putInt((int) size);
+            drain();
+        } finally {
+            deflater.end();
+            if (closeTarget) {
+                target.close();
+            }
+        }
+    }
+
+    private void deflate() throws IOException {
+        if (!output.hasRemaining()) {
+            drain();
+        }
+        deflater.deflate(output);
+    }
+
+    /**
+     * Writes the compressed bytes collected so far to the target.
+     */
+    private void drain() throws IOException {
+        output.flip();
+        while (output.hasRemaining()) {
+            target.write(output);
+        }
+        output.clear();
+    }
+}
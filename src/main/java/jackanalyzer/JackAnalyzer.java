@@ -1,6 +1,11 @@
 package jackanalyzer;
 
 import java.io.*;
+import java.nio.channels.*;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.*;
 /**
  * The JackAnalyzer class serves as the entry point for analyzing Jack programs.
  * Responsibilities:
@@ -12,36 +17,112 @@ import java.io.*;
  * - Example:
  *   - JackAnalyzer <path-to-file>.jack -> Creates <path-to-file>.xml
  *   - JackAnalyzer <path-to-directory>/ -> Creates .xml files for all .jack files in the directory.
+ * - Options (see AnalyzerOptions) may come before the path:
+ *   - --stream -> Tokenizes while parsing, so memory does not grow with the file size.
+ *   - --jobs N -> Analyzes the files of a directory on N threads (default: all processors).
+ *     The largest files are started first, and the messages are still printed in input order.
+ *   - --recursive -> Analyzes the whole tree under the directory. Files are handed to the workers
+ *     while the tree is walked, so output starts right away and the file list is never built.
+ *   - --include GLOB / --exclude GLOB -> Filters the files by their path relative to the directory.
+ *   - --incremental -> Skips files which did not change since the last run (see BuildManifest).
+ *   - --watch -> Keeps running after the first analysis and re-analyzes every saved file (see AnalyzerWatcher).
+ *   - --tokens -> Also writes <path-to-file>T.xml, the token list, while the parse tree is written.
+ *   - --compact -> Writes the XML without indentation and line breaks.
+ *   - --check -> Only parses, into a listener that discards everything, and reports every syntax error
+ *     and the throughput. Exits with status 1 if a file has a syntax error.
+ *   - --gzip -> Writes <path-to-file>.xml.gz, compressed while it is written (see GzipChannel).
+ *   - --gzip-archive FILE -> Writes all outputs as the members of the one gzip file FILE (see GzipArchive).
+ *   - --archive FILE -> Writes all outputs as the entries of the one zip file FILE, from a single
+ *     writer thread (see ZipArchive).
+ *   - --token-cache -> Keeps the tokens of every file in <path-to-file>.jtok and loads them from there
+ *     while the file is unchanged, instead of lexing it again (see TokenCache).
+ *   - --mmap -> Reads every file through a memory mapping instead of a FileReader (see Utf8Source).
+ *   - --simd -> Skips comments and strings with vector instructions (see VectorScan). Needs the JVM option
+ *     --add-modules jdk.incubator.vector, else a warning is printed and the scalar lexer is used.
  * Error Handling:
  * - Provides informative messages if the input path does not exist or is invalid.
+ * - Reports a syntax error as file:line:column and exits with status 1.
  * - Skips non-.jack files and subdirectories when processing directories.
  */
 
 public class JackAnalyzer {
     public static void main(String[] args) throws IOException {
-        // Ensure exactly one input parameter is provided
-        if (args.length != 1) {
-            System.out.println("Please provide exactly one jack file path or a directory path");
+        // Ensure exactly one input path is provided, next to the options.
+        AnalyzerOptions options;
+        try {
+            options = AnalyzerOptions.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage());
             return;
         }
-        // Takes args[0] as the relevant path.
-        File path = new File(args[0]);
+        File path = options.path;
         // Checks if the input exists.
         if (!path.exists()) {
             System.out.println("Error: The specified path does not exist.");
             return;
         }
+        if (options.simd && !VectorScan.enable()) {
+            System.out.println("Warning: --simd needs the JVM option --add-modules jdk.incubator.vector, using the scalar lexer.");
+        }
+        if (options.incremental) {
+            // The manifest lives in the analyzed directory, or next to the analyzed file.
+            File directory = path.isDirectory() ? path : path.getAbsoluteFile().getParentFile();
+            options.manifest = BuildManifest.load(directory.toPath(), options.outputFormat());
+        }
+        if (options.check) {
+            options.checkSummary = new CheckSummary();
+        }
+        if (options.gzipArchiveFile != null || options.archiveFile != null) {
+            // Entry names are relative to the analyzed directory, or to the directory of the analyzed file.
+            Path directory = (path.isDirectory() ? path : path.getAbsoluteFile().getParentFile()).toPath();
+            options.archive = options.archiveFile != null ? new ZipArchive(options.archiveFile, directory)
+                    : new GzipArchive(options.gzipArchiveFile, directory);
+        }
+        boolean failed = false;
+        try {
+            analyze(path, options);
+        } catch (JackSyntaxException e) {
+            System.out.println("Error: " + e.getMessage());
+            failed = true;
+        } finally {
+            if (options.manifest != null) {
+                options.manifest.save(); // Keeps what was done, even if a file failed.
+            }
+            if (options.archive != null) {
+                options.archive.close(); // Keeps the entries of the files done before a failure.
+            }
+        }
+        if (options.checkSummary != null) {
+            System.out.println(options.checkSummary.summary());
+            failed |= options.checkSummary.failed();
+        }
+        if (options.watch) {
+            AnalyzerWatcher.watch(path, options);
+        }
+        if (failed) {
+            System.exit(1); // Lets scripts and hooks see the failure.
+        }
+    }
+
+    /**
+     * Analyzes the input path: a single .jack file, or the .jack files of a directory.
+     * @param path the file or directory given on the command line.
+     * @param options of this run.
+     */
+    static void analyze(File path, AnalyzerOptions options) throws IOException {
         // Process input based on whether it's a file or a directory regarding the instructions.
         if (path.isFile() && path.getName().endsWith(".jack")) {
             // Handles a single .jack file
-            jackToXML(path);
+            System.out.print(jackToXML(path, options));
+        } else if (path.isDirectory() && options.recursive) {
+            // Process all .jack files in the tree.
+            analyzeTree(path.toPath(), options);
         } else if (path.isDirectory()) {
             // Process all .jack files in the directory
-            File[] jackFiles = path.listFiles((dir, name) -> name.endsWith(".jack"));
+            File[] jackFiles = path.listFiles((dir, name) -> name.endsWith(".jack") && options.accepts(Path.of(name)));
             if (jackFiles != null && jackFiles.length > 0) {
-                for (File jackFile : jackFiles) { // Iterates the folder and 'JackAnalyze' it.
-                    jackToXML(jackFile);
-                }
+                Arrays.sort(jackFiles); // A stable input order, so the output is the same in every run.
+                analyzeAll(jackFiles, options);
             } else {
                 System.out.println("No .jack files found in the specified directory.");
             }
@@ -50,21 +131,325 @@ public class JackAnalyzer {
         }
     }
 
+    /**
+     * Analyzes the given files, in parallel when more than one job is allowed.
+     * The work is scheduled largest file first, so a big file started last does not keep
+     * everybody waiting, and the messages of every file are printed in input order.
+     * @param jackFiles the .jack files to process.
+     * @param options of this run.
+     * @throws IOException the first failure, in input order.
+     */
+    private static void analyzeAll(File[] jackFiles, AnalyzerOptions options) throws IOException {
+        if (options.jobs == 1 || jackFiles.length == 1) {
+            for (File jackFile : jackFiles) { // Iterates the folder and 'JackAnalyze' it.
+                System.out.print(jackToXML(jackFile, options));
+            }
+            return;
+        }
+        // Work-stealing pool: an idle thread takes queued files from the busy ones.
+        ExecutorService pool = Executors.newWorkStealingPool(options.jobs);
+        try {
+            List<Future<String>> reports = new ArrayList<>(Collections.nCopies(jackFiles.length, null));
+            Integer[] largestFirst = new Integer[jackFiles.length];
+            for (int i = 0; i < largestFirst.length; i++) {
+                largestFirst[i] = i;
+            }
+            Arrays.sort(largestFirst, Comparator.comparingLong((Integer i) -> jackFiles[i].length()).reversed());
+            for (int i : largestFirst) {
+                reports.set(i, pool.submit(() -> jackToXML(jackFiles[i], options)));
+            }
+            for (Future<String> report : reports) {
+                System.out.print(await(report));
+            }
+        } finally {
+            pool.shutdownNow(); // After a failure the files still queued are not needed anymore.
+        }
+    }
+
+    /**
+     * Walks the directory tree and analyzes every .jack file as soon as it is found.
+     * At most a few files per job are in flight: when the window is full, the oldest report is
+     * awaited and printed, so messages come in the order the walk found the files.
+     * @param root the directory to analyze.
+     * @param options of this run.
+     * @throws IOException the first failure, in walk order.
+     */
+    private static void analyzeTree(Path root, AnalyzerOptions options) throws IOException {
+        ExecutorService pool = options.jobs > 1 ? Executors.newWorkStealingPool(options.jobs) : null;
+        Deque<Future<String>> inFlight = new ArrayDeque<>(); // Reports not printed yet, in walk order.
+        int[] found = {0};
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attributes) {
+                    boolean excluded = !dir.equals(root) && options.excludes(root.relativize(dir));
+                    return excluded ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) throws IOException {
+                    if (attributes.isRegularFile() && file.getFileName().toString().endsWith(".jack")
+                            && options.accepts(root.relativize(file))) {
+                        found[0]++;
+                        if (pool == null) {
+                            System.out.print(jackToXML(file.toFile(), options));
+                        } else {
+                            inFlight.add(pool.submit(() -> jackToXML(file.toFile(), options)));
+                            if (inFlight.size() >= options.jobs * 4) {
+                                System.out.print(await(inFlight.poll()));
+                            }
+                        }
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            while (!inFlight.isEmpty()) {
+                System.out.print(await(inFlight.poll()));
+            }
+        } finally {
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+        if (found[0] == 0) {
+            System.out.println("No .jack files found in the specified directory.");
+        }
+    }
+
+    /**
+     * Waits for the report of one file.
+     * @return the report.
+     * @throws IOException if analyzing the file failed.
+     */
+    private static String await(Future<String> report) throws IOException {
+        try {
+            return report.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for the analysis");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
     /**
      * Handling a single .jack file by tokenizing, compiling, and outputting XML. will be used for any 'JackAnalyzing' purposes.
+     * The messages are returned instead of printed, so files analyzed in parallel still report in order.
      * @param jackFile the .jack file to process.
+     * @param options of this run.
+     * @return the messages about this file, one per line.
      */
-    private static void jackToXML(File jackFile) throws IOException {
-        System.out.println("Processing: " + jackFile.getName());
-        // Create a tokenizer for the input file using the relevant class.
-        JackTokenizer tokenizer = new JackTokenizer(jackFile);
+    static String jackToXML(File jackFile, AnalyzerOptions options) throws IOException {
+        if (options.check) {
+            return check(jackFile, options);
+        }
         // Determine the output file path as the same folder and '.jack' replaced by '.xml'.
         String XMLFileName = jackFile.getAbsolutePath().replace(".jack", ".xml");
         File XMLFile = new File(XMLFileName);
-        // Create and run the compilation engine.
-        CompilationEngine engine = new CompilationEngine(tokenizer, XMLFile);
-        engine.compileClass();
-        engine.close();
-        System.out.println("Output written to: " +  XMLFileName);
+        // The token list, if asked for, goes next to it as 'T.xml'.
+        File tokensFile = options.tokens ? new File(jackFile.getAbsolutePath().replace(".jack", "T.xml")) : null;
+        if (options.gzip) {
+            XMLFileName += ".gz";
+            XMLFile = new File(XMLFileName);
+            tokensFile = tokensFile != null ? new File(tokensFile.getPath() + ".gz") : null;
+        }
+        String hash = null;
+        if (options.manifest != null) {
+            hash = BuildManifest.hash(jackFile);
+            if (options.manifest.isUpToDate(jackFile, XMLFile, hash) && (tokensFile == null || tokensFile.isFile())) {
+                return "Up to date: " + jackFile.getName() + System.lineSeparator();
+            }
+        }
+        StringBuilder report = new StringBuilder("Processing: ").append(jackFile.getName()).append(System.lineSeparator());
+        Reader reader = null; // The source, open while the engine parses in streaming mode.
+        WritableByteChannel xml = null;
+        WritableByteChannel tokens = null;
+        try {
+            JackTokenizer tokenizer;
+            if (options.streaming) {
+                // Tokens are pulled from the file while the engine parses, the reader must stay open until it is done.
+                reader = new FileReader(jackFile);
+                tokenizer = new JackTokenizer(reader, options.symbols);
+            } else {
+                // The whole file is tokenized before any output is opened, so a file which cannot be read leaves none.
+                tokenizer = tokenize(jackFile, options);
+                report.append(cacheWarning(tokenizer));
+            }
+            xml = open(XMLFile, options);
+            tokens = tokensFile != null ? open(tokensFile, options) : null;
+            compile(tokenizer, xml, tokens, options.compact);
+        } catch (Throwable e) {
+            // Half a parse tree is of no use to anybody, whatever stopped the parse: the outputs opened so far
+            // are closed and deleted. Members of an archive are simply never added.
+            closeAfterFailure(xml, e);
+            closeAfterFailure(tokens, e);
+            if (options.archive == null) {
+                if (xml != null) {
+                    XMLFile.delete();
+                }
+                if (tokens != null) {
+                    tokensFile.delete();
+                }
+            }
+            if (e instanceof JackSyntaxException syntax) {
+                throw syntax.inFile(jackFile.getPath());
+            }
+            throw e;
+        } finally {
+            if (reader != null) {
+                reader.close();
+            }
+        }
+        if (options.manifest != null) {
+            options.manifest.record(jackFile, hash);
+        }
+        if (options.archive != null) {
+            // Only complete outputs go into the archive.
+            options.archive.add((OutputArchive.Entry) xml);
+            report.append("Output added to archive: ").append(((OutputArchive.Entry) xml).name()).append(System.lineSeparator());
+            if (tokens != null) {
+                options.archive.add((OutputArchive.Entry) tokens);
+                report.append("Tokens added to archive: ").append(((OutputArchive.Entry) tokens).name()).append(System.lineSeparator());
+            }
+            return report.toString();
+        }
+        report.append("Output written to: ").append(XMLFileName).append(System.lineSeparator());
+        if (tokensFile != null) {
+            report.append("Tokens written to: ").append(tokensFile.getPath()).append(System.lineSeparator());
+        }
+        return report.toString();
+    }
+
+    /**
+     * Closes an output after a failure. An error while closing is added to the failure instead of replacing it.
+     * @param output the channel, or null if it was never opened.
+     * @param failure what stopped the analysis.
+     */
+    private static void closeAfterFailure(WritableByteChannel output, Throwable failure) {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.close();
+        } catch (IOException | RuntimeException e) {
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Opens where one output goes: the file itself, the file compressed on the fly for --gzip,
+     * or a new entry of the archive for --gzip-archive and --archive.
+     * @param file the output file.
+     * @param options of this run.
+     * @return the channel the XmlSink writes to.
+     */
+    private static WritableByteChannel open(File file, AnalyzerOptions options) throws IOException {
+        if (options.archive != null) {
+            return options.archive.entry(file);
+        }
+        FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        if (!options.gzip) {
+            return channel;
+        }
+        try {
+            return new GzipChannel(channel, file.getName().substring(0, file.getName().length() - 3), true);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Tokenizes a whole .jack file, through its .jtok token cache or a memory mapping when asked for.
+     * @param jackFile the .jack file.
+     * @param options of this run.
+     * @return the tokenizer.
+     */
+    private static JackTokenizer tokenize(File jackFile, AnalyzerOptions options) throws IOException {
+        if (options.tokenCache) {
+            return new JackTokenizer(jackFile, new File(jackFile.getAbsolutePath().replace(".jack", ".jtok")), options.symbols);
+        }
+        if (options.mmap) {
+            return JackTokenizer.mapped(jackFile, options.symbols);
+        }
+        return new JackTokenizer(jackFile, options.symbols);
+    }
+
+    /**
+     * @return a warning line if the token cache of the tokenizer could not be read or written, else nothing.
+     */
+    private static String cacheWarning(JackTokenizer tokenizer) {
+        IOException failure = tokenizer.cacheFailure();
+        if (failure == null) {
+            return "";
+        }
+        return "Warning: token cache not used: " + failure + System.lineSeparator();
+    }
+
+    /**
+     * Creates and runs the compilation engine.
+     * @param tokenizer providing the tokens of one class.
+     * @param XMLOutput where the parse tree is written, closed when done.
+     * @param tokensOutput where the token list is written at the same time, or null.
+     * @param compact whether the XML is written without indentation and line breaks.
+     */
+    private static void compile(JackTokenizer tokenizer, WritableByteChannel XMLOutput, WritableByteChannel tokensOutput,
+                                boolean compact) throws IOException {
+        XmlSink xml = new XmlSink(XMLOutput, compact);
+        if (tokensOutput != null) {
+            xml.copyTokensTo(new XmlSink(tokensOutput, compact));
+        }
+        CompilationEngine engine = new CompilationEngine(tokenizer, xml);
+        try {
+            engine.compileClass();
+        } finally {
+            engine.close();
+        }
+    }
+
+    /**
+     * Parses a single .jack file without writing anything, for --check. Files unchanged since they
+     * last passed are skipped when incremental.
+     * @param jackFile the .jack file to check.
+     * @param options of this run.
+     * @return nothing for a valid file, else the syntax error, after a warning if the token cache could not be used.
+     */
+    private static String check(File jackFile, AnalyzerOptions options) throws IOException {
+        String hash = null;
+        if (options.manifest != null) {
+            hash = BuildManifest.hash(jackFile);
+            if (options.manifest.isUpToDate(jackFile, jackFile, hash)) { // There is no output, only the input must exist.
+                return "";
+            }
+        }
+        ParseListener discard = new ParseListener() {}; // Nothing is written, parsing is all the work.
+        String warning = ""; // About the token cache.
+        try {
+            if (options.streaming) {
+                try (Reader reader = new FileReader(jackFile)) {
+                    new CompilationEngine(new JackTokenizer(reader, options.symbols), discard).compileClass();
+                }
+            } else {
+                JackTokenizer tokenizer = tokenize(jackFile, options);
+                warning = cacheWarning(tokenizer);
+                new CompilationEngine(tokenizer, discard).compileClass();
+            }
+        } catch (JackSyntaxException e) {
+            options.checkSummary.record(jackFile.length(), false);
+            return warning + "Error: " + e.inFile(jackFile.getPath()).getMessage() + System.lineSeparator();
+        }
+        options.checkSummary.record(jackFile.length(), true);
+        if (options.manifest != null) {
+            options.manifest.record(jackFile, hash);
+        }
+        return warning;
     }
 }
@@ -0,0 +1,98 @@
+package jackanalyzer;
+
+/**
+ * The JackCharacters class answers the two questions the lexer asks most: what kind of character is
+ * this, and is this word a keyword. Both are table lookups, no Strings, Sets or boxing involved.
+ *
+ * How it works:
+ * - Character classes: a 128-entry table for ASCII (whitespace, symbol, quote or word), built once
+ *   from the Jack symbols. Other characters are words, unless Character.isWhitespace() says otherwise.
+ * - Keywords: a perfect hash over the 21 Jack keywords, (2 * first + 14 * second + 5 * length) & 31,
+ *   which puts every keyword in its own of 32 slots. A word is a keyword only if the keyword in its slot
+ *   has the same length and characters, so a lookup is one hash and at most one comparison.
+ *   The table is built when the class is loaded, and building fails if a keyword ever collides.
+ */
+public final class JackCharacters {
+    public static final byte WORD = 0; // Part of a keyword, identifier or integer.
+    public static final byte WHITESPACE = 1;
+    public static final byte SYMBOL = 2;
+    public static final byte QUOTE = 3; // Starts or ends a string constant.
+
+    /**
+     * The predefined Jack keywords, in the order of their SymbolPool ids.
+     */
+    static final String[] KEYWORDS = {
+            "class", "constructor", "function", "method", "field", "static", "var", "int", "char", "boolean",
+            "void", "true", "false", "null", "this", "let", "do", "if", "else", "while", "return"
+    };
+    private static final String SYMBOLS = "{}()[].,;+-*/&|<>=~";
+
+    private static final byte[] CLASSES = new byte[128];
+    private static final char[][] KEYWORD_SLOTS = new char[32][]; // The keyword of each hash slot, or null.
+    private static final byte[] KEYWORD_IDS = new byte[32]; // Its index in KEYWORDS.
+
+    static {
+        for (char c = 0; c < CLASSES.length; c++) {
+            if (Character.isWhitespace(c)) {
+                CLASSES[c] = WHITESPACE;
+            } else if (SYMBOLS.indexOf(c) != -1) {
+                CLASSES[c] = SYMBOL;
+            } else if (c == '"') {
+                CLASSES[c] = QUOTE;
+            }
+        }
+        for (int id = 0; id < KEYWORDS.length; id++) {
+            char[] keyword = KEYWORDS[id].toCharArray();
+            int slot = slot(keyword, 0, keyword.length);
+            if (KEYWORD_SLOTS[slot] != null) {
+                throw new IllegalStateException("The keyword hash is not perfect anymore: " + KEYWORDS[id]);
+            }
+            KEYWORD_SLOTS[slot] = keyword;
+            KEYWORD_IDS[slot] = (byte) id;
+        }
+    }
+
+    private JackCharacters() {
+    }
+
+    /**
+     * @param c character to be classified.
+     * @return WORD, WHITESPACE, SYMBOL or QUOTE.
+     */
+    public static byte classOf(char c) {
+        if (c < 128) {
+            return CLASSES[c];
+        }
+        return Character.isWhitespace(c) ? WHITESPACE : WORD;
+    }
+
+    /**
+     * @param buffer holding a word.
+     * @param start where the word starts in the buffer.
+     * @param length the number of characters of the word.
+     * @return the index of the keyword in the Jack keyword list (its SymbolPool id), or -1 if the word is no keyword.
+     */
+    public static int keyword(char[] buffer, int start, int length) {
+        if (length < 2 || length > 11) { // "do" to "constructor".
+            return -1;
+        }
+        int slot = slot(buffer, start, length);
+        char[] keyword = KEYWORD_SLOTS[slot];
+        if (keyword == null || keyword.length != length) {
+            return -1;
+        }
+        for (int i = 0; i < length; i++) {
+            if (keyword[i] != buffer[start + i]) {
+                return -1;
+            }
+        }
+        return KEYWORD_IDS[slot];
+    }
+
+    /**
+     * @return the hash slot of a word of at least two characters.
+     */
+    private static int slot(char[] buffer, int start, int length) {
+        return (2 * buffer[start] + 14 * buffer[start + 1] + 5 * length) & 31;
+    }
+}
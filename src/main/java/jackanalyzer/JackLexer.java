@@ -0,0 +1,283 @@
+package jackanalyzer;
+
+import java.io.*;
+import java.util.Arrays;
+
+/**
+ * The JackLexer class scans a Jack source held in a character buffer
+ * and finds the tokens in it, one at a time.
+ *
+ * How it works:
+ * - The buffer is walked exactly once with an explicit state machine with the states:
+ *   CODE, LINE_COMMENT, BLOCK_COMMENT, STRING and WORD (keyword, identifier or integer).
+ * - Comments and whitespace are skipped in place, no substrings are created for them.
+ * - Every call to next() moves to the next token and exposes it as a span (start, length)
+ *   of the buffer, so the caller decides whether and when to copy it.
+ * - The type of every token is decided right here, once, while its characters are still at hand.
+ *   Characters are classified and keywords recognized by table lookups (see JackCharacters).
+ * - Optionally (see VectorScan), the insides of comments and string constants are skipped by searching
+ *   for their delimiters with vector instructions; the state machine still handles each delimiter found.
+ *
+ * Two modes:
+ * - Whole input: the buffer holds the complete source and the spans stay valid forever.
+ * - Streaming: the buffer is a window that is refilled from a Reader, so memory does not depend on
+ *   the input size. A span is valid only until the next call to next().
+ *   Since the text before the window is gone, the lines are counted on the way (see locateToken()),
+ *   so the line and column of a token are still known, e.g. for syntax errors.
+ *
+ * Used by the JackTokenizer, which keeps the hasMoreTokens()/advance()/tokenType() API on top of it.
+ */
+final class JackLexer {
+    // The states of the scanning state machine.
+    private static final int CODE = 0;
+    private static final int LINE_COMMENT = 1;
+    private static final int BLOCK_COMMENT = 2;
+    private static final int STRING = 3;
+    private static final int WORD = 4;
+
+    private static final int WINDOW_SIZE = 8192; // Initial window size in streaming mode.
+
+    private char[] buffer; // The whole source, or the current window of it when streaming.
+    private int limit; // Number of valid characters in the buffer.
+    private final Reader reader; // Refills the window when streaming, null for a whole input.
+    private boolean endOfInput; // True once everything has been read into the buffer.
+    private int position = 0; // The next character to be scanned.
+    private int tokenStart; // Start of the last token found.
+    private int tokenLength; // Length of the last token found.
+    private byte tokenType; // TokenType ordinal of the last token found.
+    private int countedTo; // Lines are counted up to here (streaming only).
+    private int line = 1; // Line number at countedTo.
+    private int lineStart; // Where that line starts in the buffer, negative once it left the window.
+    private final boolean vectorScan = VectorScan.enabled(); // Skip comments and strings with VectorScanner.
+
+    /**
+     * Creates a lexer over the first 'limit' characters of the given buffer.
+     * @param buffer holding the Jack source.
+     * @param limit the number of valid characters in the buffer.
+     */
+    JackLexer(char[] buffer, int limit) {
+        this.buffer = buffer;
+        this.limit = limit;
+        this.reader = null;
+        this.endOfInput = true;
+    }
+
+    /**
+     * Creates a streaming lexer which pulls the source from the reader as tokens are requested.
+     * The reader is not closed by the lexer.
+     * @param reader providing the Jack source.
+     */
+    JackLexer(Reader reader) {
+        this.buffer = new char[WINDOW_SIZE];
+        this.limit = 0;
+        this.reader = reader;
+        this.endOfInput = false;
+    }
+
+    /**
+     * Scans forward to the next token.
+     * @return true if a token was found (see tokenStart() and tokenLength()), false at the end of the input.
+     * @throws UncheckedIOException if the reader fails while streaming.
+     */
+    boolean next() {
+        int state = CODE;
+        int i = position;
+        while (true) {
+            if (limit - i < 2 && !endOfInput) {
+                // Two characters are needed to recognize "//", "/*" and "*/", so refill the window first.
+                // The characters of a token in progress are kept, everything before them is dropped.
+                int keep = (state == STRING || state == WORD) ? tokenStart : i;
+                refill(keep);
+                i -= keep;
+                continue;
+            }
+            if (i >= limit) {
+                break;
+            }
+            char c = buffer[i];
+            switch (state) {
+                case CODE:
+                    byte kind = JackCharacters.classOf(c);
+                    if (c == '/' && i + 1 < limit && buffer[i + 1] == '/') {
+                        state = LINE_COMMENT;
+                        i += 2;
+                    } else if (c == '/' && i + 1 < limit && buffer[i + 1] == '*') {
+                        state = BLOCK_COMMENT;
+                        i += 2;
+                    } else if (kind == JackCharacters.WHITESPACE) {
+                        i++;
+                    } else if (kind == JackCharacters.QUOTE) {
+                        // Strings are kept with their quotes, exactly like before.
+                        tokenStart = i;
+                        state = STRING;
+                        i++;
+                    } else if (kind == JackCharacters.SYMBOL) {
+                        // Individual symbol is a standalone token.
+                        return found(i, 1, TokenType.SYMBOL);
+                    } else {
+                        // Keyword, identifier or integer: runs until whitespace, a symbol or a quote.
+                        tokenStart = i;
+                        state = WORD;
+                        i++;
+                    }
+                    break;
+                case LINE_COMMENT:
+                    if (c == '\n') {
+                        state = CODE;
+                        i++;
+                    } else {
+                        i = vectorScan ? VectorScanner.indexOf(buffer, i + 1, limit, '\n') : i + 1;
+                    }
+                    break;
+                case BLOCK_COMMENT:
+                    if (c == '*' && i + 1 < limit && buffer[i + 1] == '/') {
+                        state = CODE;
+                        i += 2;
+                    } else {
+                        i = vectorScan ? VectorScanner.indexOf(buffer, i + 1, limit, '*') : i + 1;
+                    }
+                    break;
+                case STRING:
+                    if (c == '"') {
+                        return found(tokenStart, i + 1 - tokenStart, TokenType.STRING_CONST);
+                    }
+                    if (c == '\n' || c == '\r') {
+                        // A string constant may not span lines, keep what we have.
+                        return found(tokenStart, i - tokenStart, TokenType.STRING_CONST);
+                    }
+                    i = vectorScan ? VectorScanner.indexOfAny(buffer, i + 1, limit, '"', '\n', '\r') : i + 1;
+                    break;
+                default: // WORD
+                    if (JackCharacters.classOf(c) != JackCharacters.WORD) {
+                        return found(tokenStart, i - tokenStart, classifyWord(buffer, tokenStart, i - tokenStart));
+                    }
+                    i++;
+                    break;
+            }
+        }
+        position = limit;
+        if (state == STRING) {
+            // Input ended inside a string constant.
+            return found(tokenStart, limit - tokenStart, TokenType.STRING_CONST);
+        }
+        if (state == WORD) {
+            return found(tokenStart, limit - tokenStart, classifyWord(buffer, tokenStart, limit - tokenStart));
+        }
+        return false;
+    }
+
+    /**
+     * @return the buffer the spans of tokenStart() and tokenLength() refer to.
+     */
+    char[] buffer() {
+        return buffer;
+    }
+
+    /**
+     * @return the index in the buffer where the last token starts.
+     */
+    int tokenStart() {
+        return tokenStart;
+    }
+
+    /**
+     * @return the number of characters of the last token.
+     */
+    int tokenLength() {
+        return tokenLength;
+    }
+
+    /**
+     * @return the TokenType ordinal of the last token.
+     */
+    byte tokenType() {
+        return tokenType;
+    }
+
+    /**
+     * Counts the lines up to the last token found, so tokenLine() and tokenColumn() are known.
+     * Every character is counted once, however often this is called.
+     */
+    void locateToken() {
+        countLines(tokenStart);
+    }
+
+    /**
+     * @return the line of the last token found, starting at 1. Valid after locateToken().
+     */
+    int tokenLine() {
+        return line;
+    }
+
+    /**
+     * @return the column of the last token found, starting at 1. Valid after locateToken().
+     */
+    int tokenColumn() {
+        return tokenStart - lineStart + 1;
+    }
+
+    private void countLines(int to) {
+        for (int i = countedTo; i < to; i++) {
+            if (buffer[i] == '\n') {
+                line++;
+                lineStart = i + 1;
+            }
+        }
+        countedTo = Math.max(countedTo, to);
+    }
+
+    /**
+     * Drops the characters before 'keep' from the window and reads more input after the remaining ones.
+     * The window grows only when a single token does not fit in it.
+     * @param keep index of the first character that is still needed.
+     */
+    private void refill(int keep) {
+        countLines(keep); // The dropped characters cannot be counted later.
+        System.arraycopy(buffer, keep, buffer, 0, limit - keep);
+        limit -= keep;
+        tokenStart -= keep;
+        countedTo -= keep;
+        lineStart -= keep;
+        if (limit == buffer.length) {
+            buffer = Arrays.copyOf(buffer, buffer.length * 2);
+        }
+        try {
+            int read = reader.read(buffer, limit, buffer.length - limit);
+            if (read == -1) {
+                endOfInput = true;
+            } else {
+                limit += read;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Records the span and type of a token and moves the position right after it.
+     */
+    private boolean found(int start, int length, TokenType type) {
+        tokenStart = start;
+        tokenLength = length;
+        tokenType = (byte) type.ordinal();
+        position = start + length;
+        return true;
+    }
+
+    /**
+     * Decides the type of a keyword, identifier or integer directly on the buffer, without creating a String.
+     * @return KEYWORD, INT_CONST or IDENTIFIER.
+     */
+    static TokenType classifyWord(char[] buffer, int start, int length) {
+        if (JackCharacters.keyword(buffer, start, length) >= 0) {
+            return TokenType.KEYWORD;
+        }
+        for (int i = start; i < start + length; i++) {
+            if (buffer[i] < '0' || buffer[i] > '9') {
+                return TokenType.IDENTIFIER;
+            }
+        }
+        return TokenType.INT_CONST;
+    }
+
+}
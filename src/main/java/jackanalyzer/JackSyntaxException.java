@@ -0,0 +1,70 @@
+package jackanalyzer;
+
+/**
+ * The JackSyntaxException class reports a Jack program that does not follow the grammar.
+ * It is thrown by the CompilationEngine at the first token that does not fit, and tells where it is,
+ * in the usual "file:line:column: problem" form.
+ */
+public class JackSyntaxException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final String fileName; // null until the analyzer knows which file was parsed.
+    private final int line;
+    private final int column;
+    private final String problem;
+
+    /**
+     * @param line of the offending token, starting at 1.
+     * @param column of the offending token, starting at 1.
+     * @param problem what was expected and what was found instead.
+     */
+    public JackSyntaxException(int line, int column, String problem) {
+        this(null, line, column, problem);
+    }
+
+    private JackSyntaxException(String fileName, int line, int column, String problem) {
+        super((fileName != null ? fileName + ":" : "") + line + ":" + column + ": " + problem);
+        this.fileName = fileName;
+        this.line = line;
+        this.column = column;
+        this.problem = problem;
+    }
+
+    /**
+     * @param fileName of the parsed file.
+     * @return the same error, with the file name in its message.
+     */
+    public JackSyntaxException inFile(String fileName) {
+        JackSyntaxException located = new JackSyntaxException(fileName, line, column, problem);
+        located.setStackTrace(getStackTrace());
+        return located;
+    }
+
+    /**
+     * @return the parsed file, or null if not known.
+     */
+    public String fileName() {
+        return fileName;
+    }
+
+    /**
+     * @return the line of the offending token, starting at 1.
+     */
+    public int line() {
+        return line;
+    }
+
+    /**
+     * @return the column of the offending token, starting at 1.
+     */
+    public int column() {
+        return column;
+    }
+
+    /**
+     * @return what was expected and what was found instead, without the position.
+     */
+    public String problem() {
+        return problem;
+    }
+}
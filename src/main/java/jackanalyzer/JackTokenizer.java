@@ -1,5 +1,9 @@
 package jackanalyzer;
 import  java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
 /**
  * The JackTokenizer class breaks a .jack file into individual tokens,
@@ -13,50 +17,281 @@ import java.util.*;
  * - STRING_CONST: Text in quotes, like "hello".
  *
  * Key Features:
- * - Removes all comments from the file.
- * - Processes the file and stores all tokens in a list.
+ * - Skips all comments in a single pass over the file (see JackLexer).
+ * - Stores the tokens as offsets into the source buffer (start, length, type arrays), not as strings.
+ * - Keywords and identifiers also get the id of their name in a SymbolPool, so they are compared as ints,
+ *   and their String exists once per pool however many files use them. The files of a run share the pool
+ *   given to their constructors; a tokenizer constructed without one has a pool of its own, dropped with it.
  * - Provides methods to navigate through tokens and retrieve their type and value.
  *
  * How it works:
- * 1. Reads the .jack file during initialization.
- * 2. Splits the file into tokens and stores them in a list.
+ * 1. Reads the whole .jack file into one buffer during initialization.
+ * 2. Walks the buffer once with the JackLexer state machine and records where every token is.
  * 3. Allows to navigate and access tokens with methods like hasMoreTokens() and advance().
+ *    A String is created only when the text of a token is actually asked for.
+ *
+ * Token cache:
+ * - When constructed with a cache file, the tokens are loaded from it if it was made from the same source
+ *   (see TokenCache), and the file is not lexed at all. Otherwise the file is lexed and the cache written.
+ * - The cache only saves time: if it cannot be read or written (a read-only tree, a full disk), the
+ *   lexed tokens are used anyway, and the failure is kept for the caller to report (see cacheFailure()).
+ *
+ * Mapped files and sources in memory:
+ * - mapped() reads the file through a memory mapping instead of a FileReader (see Utf8Source),
+ *   and then lexes it like any other whole file.
+ * - A CharSequence, a byte[] or a ByteBuffer holding the source is tokenized the same way, so a
+ *   program that already has the source in memory does not need to write it to a file first.
+ *
+ * Streaming mode:
+ * - When constructed from a Reader or a ReadableByteChannel, nothing is tokenized up front.
+ *   Tokens are pulled from the lexer as the parser advances, and only a small ring buffer of
+ *   upcoming tokens is kept (see peekType() and peekSymbol()), so memory does not depend on the input size.
  */
 public class JackTokenizer {
-    private BufferedReader reader; // Reads the input file line by line.
-    private String currentToken; // Obtains the current token being processed.
-    private List<String> tokens; // All the extracted tokens.
-    private int tokenIndex; // Current token index in the tokens list.
-    private boolean insideBlockComment = false; // For removing comments method.
+    private static final int MAX_CHARS = Integer.MAX_VALUE - 8; // The largest array most JVMs can allocate.
+    private static final int RING_SIZE = 8; // Tokens kept in streaming mode: the current one and up to 7 ahead.
+
+    private char[] source; // The whole input, all the tokens point into it. null when streaming.
+    private int[] starts; // Where each token starts in the source.
+    private int[] lengths; // The number of characters of each token.
+    private byte[] types; // TokenType ordinals of the tokens, decided once by the lexer.
+    private int[] symbols; // SymbolPool ids of the keywords and identifiers, -1 for the other tokens.
+    private int tokenCount; // The number of tokens found (so far, when streaming).
+    private int tokenIndex; // Index of the next token to become the current token.
+    private int current; // Index of the current token.
+    private JackLexer streamingLexer; // Produces tokens on demand in streaming mode, null otherwise.
+    private char[][] ringText; // Copies of the characters of the tokens in the ring when streaming.
+    private int[] ringLines; // Line and column of the tokens in the ring when streaming.
+    private int[] ringColumns;
+    private char[] currentChars; // The array holding the current token.
+    private int currentStart; // Where the current token starts in currentChars.
+    private int currentLength; // The number of characters of the current token.
+    private String currentText; // The current token as a String, created on first request.
+    private final TokenText currentView = new TokenText(); // CharSequence view of the current token.
+    private int[] sourceOffsets; // Where the tokens are in the original source, when loaded from a cache.
+    private int[] lineStarts; // Where the lines of the original source start, when loaded from a cache.
+    private final SymbolPool symbolPool; // Where the names of the keywords and identifiers are interned.
+    private IOException cacheFailure; // Why the token cache could not be read or written, or null.
+
+    /**
+     * Constructor for initializing the tokenizer and extract (with a helper function) the tokens from the input file.
+     *
+     * @param inputFile as the jack file needed to be tokenized.
+     * @throws IOException if for some reason the file cannot be read, or is larger than 2 GB.
+     */
+    public JackTokenizer(File inputFile) throws IOException {
+        this(inputFile, new SymbolPool());
+    }
+
     /**
-     * Saving the predefined Jack keywords.
+     * Constructor for a tokenizer interning its names in the given pool, e.g. the pool of a whole run.
+     *
+     * @param inputFile as the jack file needed to be tokenized.
+     * @param symbolPool where the names are interned, kept as long as the tokenizer.
+     * @throws IOException if for some reason the file cannot be read, or is larger than 2 GB.
      */
-    private static final Set<String> KEYWORDS = Set.of(
-            "class", "constructor", "function", "method", "field", "static", "var", "int", "char", "boolean",
-            "void", "true", "false", "null", "this", "let", "do", "if", "else", "while", "return"
-    );
+    public JackTokenizer(File inputFile, SymbolPool symbolPool) throws IOException {
+        this.symbolPool = symbolPool;
+        tokenIndex = 0; // Initialization for the token index, corresponding to the beginning of the tokens.
+        current = 0; // The first token is the current token if it exists.
+        tokenizeFile(inputFile); // Tokenizes the file.
+        load(0);
+    }
 
     /**
-     * Saving the predefined Jack symbols.
+     * Tokenizes a whole file read through a memory mapping, which saves copying and decoding it
+     * through a FileReader. Meant for large inputs, the result is the same as with JackTokenizer(File).
+     *
+     * @param inputFile as the jack file needed to be tokenized.
+     * @return the tokenizer.
+     * @throws IOException if the file cannot be read.
      */
-    private static final Set<Character> SYMBOLS = Set.of(
-            '{', '}', '(', ')', '[', ']', '.', ',', ';', '+', '-', '*', '/', '&', '|', '<', '>', '=', '~'
-    );
+    public static JackTokenizer mapped(File inputFile) throws IOException {
+        return mapped(inputFile, new SymbolPool());
+    }
 
     /**
-     * Constructor for initializing the tokenizer and extract (with a helper function) the tokens from the input file.
+     * Tokenizes a whole file read through a memory mapping, interning its names in the given pool.
      *
      * @param inputFile as the jack file needed to be tokenized.
-     * @throws IOException if for some reason the file cannot be read.
+     * @param symbolPool where the names are interned, kept as long as the tokenizer.
+     * @return the tokenizer.
+     * @throws IOException if the file cannot be read.
      */
-    public JackTokenizer(File inputFile) throws IOException {
-        reader = new BufferedReader(new FileReader(inputFile));
-        tokens = new ArrayList<>(); // Initialization for the tokens list.
-        tokenIndex = 0; // Initialization for the token index, corresponding to the beginning of the token list.
-        tokenizeFile(); // Tokenizes the file.
-        if (!tokens.isEmpty()) {
-            currentToken = tokens.get(0); //The first token set to be the current token if it exists.
+    public static JackTokenizer mapped(File inputFile, SymbolPool symbolPool) throws IOException {
+        return new JackTokenizer(Utf8Source.read(inputFile), symbolPool);
+    }
+
+    /**
+     * Constructor for a tokenizer over a source in memory. The characters are copied,
+     * so the source may change afterwards.
+     *
+     * @param source the Jack source.
+     */
+    public JackTokenizer(CharSequence source) {
+        this(source, new SymbolPool());
+    }
+
+    /**
+     * Constructor for a tokenizer over a source in memory, interning its names in the given pool.
+     * A long-running service may share one pool between the sources of a batch, and drop it afterwards.
+     *
+     * @param source the Jack source.
+     * @param symbolPool where the names are interned, kept as long as the tokenizer.
+     */
+    public JackTokenizer(CharSequence source, SymbolPool symbolPool) {
+        this(chars(source), source.length(), symbolPool);
+    }
+
+    /**
+     * Constructor for a tokenizer over a UTF-8 encoded source in memory.
+     *
+     * @param source the Jack source, not modified.
+     */
+    public JackTokenizer(byte[] source) {
+        this(source, new SymbolPool());
+    }
+
+    /**
+     * Constructor for a tokenizer over a UTF-8 encoded source in memory, interning its names in the given pool.
+     *
+     * @param source the Jack source, not modified.
+     * @param symbolPool where the names are interned, kept as long as the tokenizer.
+     */
+    public JackTokenizer(byte[] source, SymbolPool symbolPool) {
+        this(ByteBuffer.wrap(source), symbolPool);
+    }
+
+    /**
+     * Constructor for a tokenizer over a UTF-8 encoded source in memory, e.g. a buffer received from the network.
+     *
+     * @param source the Jack source, from its position to its limit. Neither the buffer nor its position is changed.
+     */
+    public JackTokenizer(ByteBuffer source) {
+        this(source, new SymbolPool());
+    }
+
+    /**
+     * Constructor for a tokenizer over a UTF-8 encoded source in memory, interning its names in the given pool.
+     *
+     * @param source the Jack source, from its position to its limit. Neither the buffer nor its position is changed.
+     * @param symbolPool where the names are interned, kept as long as the tokenizer.
+     */
+    public JackTokenizer(ByteBuffer source, SymbolPool symbolPool) {
+        this(Utf8Source.decode(source.duplicate()), symbolPool);
+    }
+
+    private JackTokenizer(Utf8Source source, SymbolPool symbolPool) {
+        this(source.chars, source.length, symbolPool);
+    }
+
+    /**
+     * Constructor for a tokenizer over characters already in memory.
+     *
+     * @param buffer the Jack source, kept and shared with the tokens.
+     * @param length the number of valid characters in the buffer.
+     * @param symbolPool where the names are interned.
+     */
+    private JackTokenizer(char[] buffer, int length, SymbolPool symbolPool) {
+        this.symbolPool = symbolPool;
+        tokenize(buffer, length);
+        load(0);
+    }
+
+    /**
+     * Constructor for a tokenizer using a token cache: the tokens are loaded from the cache file if it was
+     * written for the current content of the input file, else the input is tokenized and the cache written.
+     *
+     * @param inputFile as the jack file needed to be tokenized.
+     * @param cacheFile the .jtok file of the input.
+     * @throws IOException if the input cannot be read. A cache which cannot be used is only kept in cacheFailure().
+     */
+    public JackTokenizer(File inputFile, File cacheFile) throws IOException {
+        this(inputFile, cacheFile, new SymbolPool());
+    }
+
+    /**
+     * Constructor for a tokenizer using a token cache, interning its names in the given pool.
+     *
+     * @param inputFile as the jack file needed to be tokenized.
+     * @param cacheFile the .jtok file of the input.
+     * @param symbolPool where the names are interned, kept as long as the tokenizer.
+     * @throws IOException if the input cannot be read. A cache which cannot be used is only kept in cacheFailure().
+     */
+    public JackTokenizer(File inputFile, File cacheFile, SymbolPool symbolPool) throws IOException {
+        this.symbolPool = symbolPool;
+        byte[] bytes = Files.readAllBytes(inputFile.toPath());
+        byte[] hash = TokenCache.hash(bytes);
+        TokenCache cache = null;
+        try {
+            cache = TokenCache.read(cacheFile, hash);
+        } catch (IOException e) {
+            cacheFailure = e; // Lexed instead.
         }
+        if (cache != null) {
+            source = cache.text; // The string table stands in for the source, the tokens point into it.
+            starts = cache.starts;
+            lengths = cache.lengths;
+            types = cache.types;
+            tokenCount = cache.tokenCount;
+            sourceOffsets = cache.offsets;
+            lineStarts = cache.lineStarts;
+            symbols = new int[tokenCount];
+            for (int i = 0; i < tokenCount; i++) {
+                symbols[i] = symbolOf(types[i], source, starts[i], lengths[i]);
+            }
+        } else {
+            char[] chars = new String(bytes, StandardCharsets.UTF_8).toCharArray();
+            tokenize(chars, chars.length);
+            try {
+                TokenCache.write(cacheFile, hash, source, chars.length, starts, lengths, types, tokenCount);
+            } catch (IOException e) {
+                cacheFailure = e; // The tokens are lexed already, only the next run is slower.
+            }
+        }
+        load(0);
+    }
+
+    /**
+     * Constructor for a streaming tokenizer: tokens are read from the reader only as they are needed.
+     * The reader is not closed by the tokenizer.
+     *
+     * @param reader providing the Jack source.
+     * @throws UncheckedIOException from the methods moving through the tokens, if the reader fails.
+     */
+    public JackTokenizer(Reader reader) {
+        this(reader, new SymbolPool());
+    }
+
+    /**
+     * Constructor for a streaming tokenizer interning its names in the given pool.
+     * The reader is not closed by the tokenizer.
+     *
+     * @param reader providing the Jack source.
+     * @param symbolPool where the names are interned, kept as long as the tokenizer.
+     */
+    public JackTokenizer(Reader reader, SymbolPool symbolPool) {
+        this.symbolPool = symbolPool;
+        streamingLexer = new JackLexer(reader);
+        starts = new int[RING_SIZE];
+        lengths = new int[RING_SIZE];
+        types = new byte[RING_SIZE];
+        symbols = new int[RING_SIZE];
+        ringText = new char[RING_SIZE][16];
+        ringLines = new int[RING_SIZE];
+        ringColumns = new int[RING_SIZE];
+        fill(0);
+        load(0);
+    }
+
+    /**
+     * Constructor for a streaming tokenizer over a channel holding UTF-8 encoded Jack source.
+     * The channel is not closed by the tokenizer.
+     *
+     * @param channel providing the Jack source.
+     */
+    public JackTokenizer(ReadableByteChannel channel) {
+        this(Channels.newReader(channel, StandardCharsets.UTF_8));
     }
 
     /**
@@ -64,7 +299,7 @@ public class JackTokenizer {
      * @return true if there are more tokens , else - false.
      */
     public boolean hasMoreTokens() {
-        return tokenIndex < tokens.size();
+        return tokenIndex < tokenCount || fill(tokenIndex);
     }
 
     /**
@@ -72,172 +307,390 @@ public class JackTokenizer {
      */
     public void advance() {
         if (hasMoreTokens()) {
-            currentToken = tokens.get(tokenIndex++);
+            current = tokenIndex++;
+            load(current);
         }
     }
 
+    /**
+     * Looks ahead without advancing. peekType(0) is the type of the current token.
+     * @param k how many tokens after the current token, less than 8 in streaming mode.
+     * @return the type of that token, or null if the input ends before it.
+     */
+    public TokenType peekType(int k) {
+        int index = lookahead(k);
+        return index < 0 ? null : TokenType.of(types[slot(index)]);
+    }
+
+    /**
+     * Looks ahead without advancing, e.g. for telling a variable from an array entry or a subroutine call.
+     * @param k how many tokens after the current token, less than 8 in streaming mode.
+     * @return the first character of that token, or 0 if the input ends before it.
+     */
+    public char peekSymbol(int k) {
+        int index = lookahead(k);
+        if (index < 0) {
+            return 0;
+        }
+        int slot = slot(index);
+        return streamingLexer == null ? source[starts[slot]] : ringText[slot][0];
+    }
+
     /**
      * @return the type of the current token as a constant.
      */
     public String tokenType() {
-        if (KEYWORDS.contains(currentToken)) { // For keyword and symbol we'll use the sets we defined.
-            return "KEYWORD";
-        } else if (SYMBOLS.contains(currentToken.charAt(0))) {
-            return "SYMBOL";
-        } else if (currentToken.matches("\\d+")) { // '\\d' matches a digit (0-9), + means "one or more digits".
-            return "INT_CONST";
-        } else if (currentToken.startsWith("\"") && currentToken.endsWith("\"")) { // This checks if the currentToken starts and ends with a double quote ("), indicating a string constant.
-            return "STRING_CONST";
-        } else {
-            return "IDENTIFIER";
-        }
+        return getTokenType().name();
+    }
+
+    /**
+     * The type was decided once while lexing, so this is a plain array read that can be used in a switch.
+     * @return the type of the current token.
+     */
+    public TokenType getTokenType() {
+        return TokenType.of(types[slot(current)]);
     }
 
     /**
      * @return the keyword which is the current token. as a constant. this method should be called only if tokenType is KEYWORD.
      */
     public String keyWord() {
-        return currentToken;
+        return getCurrentToken();
     }
 
     /**
      * @return the character which is the current token. should be called only if tokenType is symbol.
      */
     public char symbol() {
-        return currentToken.charAt(0);
+        return currentChars[currentStart]; // Read straight from the source, no String needed.
     }
 
     /**
      * @return the string which is the current token. should be called only if tokenType is identifier.
      */
      public String identifier() {
-         return currentToken;
+         return getCurrentToken();
 
      }
     /**
      * @return the int value of the current token. should be called only if tokenType() is INT_CONST.
      */
     public int intVal() {
-        return Integer.parseInt(currentToken);
+        return Integer.parseInt(currentView, 0, currentLength, 10);
     }
 
     /**
      * @return the string value of the current token. should be called only if tokenType() is STRING_CONST.
      */
     public String stringVal() {
-        return currentToken.substring(1, currentToken.length() - 1);
+        return new String(currentChars, currentStart + 1, stringValLength());
+    }
+
+    /**
+     * @return the number of characters of stringVal(), which starts right after tokenStart().
+     */
+    int stringValLength() {
+        boolean closed = currentLength > 1 && currentChars[currentStart + currentLength - 1] == '"'; // The lexer keeps unterminated strings too.
+        return closed ? currentLength - 2 : currentLength - 1;
+    }
+
+    /**
+     * A view of the current token's characters in the source, without copying them.
+     * The view always shows the current token, so it changes when advance() is called.
+     * @return the current token as a CharSequence.
+     */
+    public CharSequence tokenText() {
+        return currentView;
+    }
+
+    /**
+     * @return the buffer holding the characters of the current token. must not be modified.
+     */
+    char[] source() {
+        return currentChars;
+    }
+
+    /**
+     * @return where the current token starts in source().
+     */
+    int tokenStart() {
+        return currentStart;
+    }
+
+    /**
+     * @return the number of characters of the current token.
+     */
+    int tokenLength() {
+        return currentLength;
+    }
+
+    /**
+     * @return the line of the current token, starting at 1.
+     */
+    int line() {
+        if (tokenCount == 0) {
+            return 1; // Empty input, the error is at its start.
+        }
+        if (streamingLexer != null) {
+            return ringLines[slot(current)];
+        }
+        if (lineStarts != null) {
+            return cachedLine() + 1;
+        }
+        int line = 1;
+        for (int i = 0; i < currentStart; i++) { // Only needed for error messages, so counted on demand.
+            if (source[i] == '\n') {
+                line++;
+            }
+        }
+        return line;
+    }
+
+    /**
+     * @return the column of the current token, starting at 1.
+     */
+    int column() {
+        if (tokenCount == 0) {
+            return 1; // Empty input, the error is at its start.
+        }
+        if (streamingLexer != null) {
+            return ringColumns[slot(current)];
+        }
+        if (lineStarts != null) {
+            return sourceOffsets[current] - lineStarts[cachedLine()] + 1;
+        }
+        int lineStart = currentStart;
+        while (lineStart > 0 && source[lineStart - 1] != '\n') {
+            lineStart--;
+        }
+        return currentStart - lineStart + 1;
+    }
+
+    /**
+     * @return the index of the line of the current token in lineStarts, when loaded from a cache.
+     */
+    private int cachedLine() {
+        int index = Arrays.binarySearch(lineStarts, sourceOffsets[current]);
+        return index >= 0 ? index : -index - 2; // Not a line start: the line starting before it.
+    }
+
+    /**
+     * @return the SymbolPool id of the current token if it is a keyword or an identifier, else -1.
+     */
+    int symbolId() {
+        return tokenCount == 0 ? -1 : symbols[slot(current)];
+    }
+
+    /**
+     * @return why the token cache could not be read or written, or null if it was used or written.
+     */
+    IOException cacheFailure() {
+        return cacheFailure;
     }
 
     /**
-     * Reads the input file line by line and takes care of comments. after removing them - tokenize it.
+     * @return the number of tokens read so far: all of them, unless streaming.
+     */
+    int tokenCount() {
+        return tokenCount;
+    }
+
+    /**
+     * Reads the whole input file into one buffer and lets the JackLexer walk it once, recording the tokens.
+     * Comments and whitespace are skipped by the lexer without creating any strings for them.
      *
+     * @param inputFile the jack file to read.
      * @throws IOException if an error arises while reading the file.
      */
-    private void tokenizeFile() throws IOException {
-        String line = reader.readLine();
-        while (line != null) {
-            // trimming and removing comments
-            line = removeComments(line).trim();
-            if (!line.isEmpty()) {
-                tokens.addAll(tokenizeLine(line));
+    private void tokenizeFile(File inputFile) throws IOException {
+        long size = inputFile.length();
+        if (size > MAX_CHARS) {
+            throw new IOException(inputFile + " is too large to be tokenized (" + size + " bytes)");
+        }
+        char[] buffer = new char[(int) Math.max(16, size)]; // Bytes >= chars, so usually one buffer is enough.
+        int length = 0;
+        try (Reader reader = new FileReader(inputFile)) {
+            int read;
+            while ((read = reader.read(buffer, length, buffer.length - length)) != -1) {
+                length += read;
+                if (length == buffer.length) {
+                    if (length == MAX_CHARS) {
+                        throw new IOException(inputFile + " is too large to be tokenized (grew past " + MAX_CHARS + " characters)");
+                    }
+                    // Grow if the file has been extended meanwhile.
+                    buffer = Arrays.copyOf(buffer, (int) Math.min((long) buffer.length * 2, MAX_CHARS));
+                }
             }
-            line = reader.readLine();
         }
-        reader.close();
+        tokenize(buffer, length);
     }
 
     /**
-     * the purpose of this helper function is to remove single line and in line comments from a given line.
-     * Adjusted couple of times to handle large block of comments.
-     * @param line of jack code as a string.
-     * @return the given line without comments.
+     * Records all the tokens of the first 'length' characters of the buffer.
+     * @param buffer the Jack source, kept as is and shared with the tokens.
+     * @param length the number of valid characters in the buffer.
      */
-    private String removeComments(String line) {
-        // If we're inside a block comment, look for the closing "*/".
-        if (insideBlockComment) {
-            if (line.contains("*/")) {
-                line = line.substring(line.indexOf("*/") + 2); // Remove everything up to "*/".
-                insideBlockComment = false; // Exiting the block comment
-            } else {
-                // Entire line is part of the block comment, so skip it
-                return "";
+    private void tokenize(char[] buffer, int length) {
+        source = buffer;
+        int capacity = Math.max(16, length / 4); // Jack code has roughly a token every four characters.
+        starts = new int[capacity];
+        lengths = new int[capacity];
+        types = new byte[capacity];
+        symbols = new int[capacity];
+        JackLexer lexer = new JackLexer(buffer, length);
+        while (lexer.next()) {
+            if (tokenCount == starts.length) {
+                starts = Arrays.copyOf(starts, tokenCount * 2);
+                lengths = Arrays.copyOf(lengths, tokenCount * 2);
+                types = Arrays.copyOf(types, tokenCount * 2);
+                symbols = Arrays.copyOf(symbols, tokenCount * 2);
             }
+            starts[tokenCount] = lexer.tokenStart();
+            lengths[tokenCount] = lexer.tokenLength();
+            types[tokenCount] = lexer.tokenType();
+            symbols[tokenCount] = symbolOf(types[tokenCount], buffer, starts[tokenCount], lengths[tokenCount]);
+            tokenCount++;
         }
+    }
 
-        // Handle single-line comments "//".
-        if (line.contains("//")) {
-            line = line.substring(0, line.indexOf("//"));
+    /**
+     * @return the characters of the source, in an array of at least 16.
+     */
+    private static char[] chars(CharSequence source) {
+        char[] chars = new char[Math.max(16, source.length())];
+        if (source instanceof String string) {
+            string.getChars(0, string.length(), chars, 0);
+        } else {
+            for (int i = 0; i < source.length(); i++) {
+                chars[i] = source.charAt(i);
+            }
         }
+        return chars;
+    }
 
-        // Handle block comments "/* ... */".
-        if (line.contains("/*")) {
-            if (line.contains("*/")) {
-                // Inline block comment (e.g., code /* comment */ code)
-                line = line.substring(0, line.indexOf("/*")) + line.substring(line.indexOf("*/") + 2);
-            } else {
-                // Block comment starts but doesn't end on this line
-                line = line.substring(0, line.indexOf("/*"));
-                insideBlockComment = true; // Entering block comment
-            }
+    /**
+     * @return the SymbolPool id of a keyword or identifier, -1 for the other tokens.
+     */
+    private int symbolOf(byte type, char[] buffer, int start, int length) {
+        if (type == TokenType.KEYWORD.ordinal()) {
+            return JackCharacters.keyword(buffer, start, length); // Keyword ids are fixed, no need to ask the pool.
+        }
+        if (type == TokenType.IDENTIFIER.ordinal()) {
+            return symbolPool.intern(buffer, start, length);
         }
+        return -1;
+    }
 
-        return line.trim(); // Return the cleaned-up line.
+    /**
+     * Makes the token with the given index the current one.
+     */
+    private void load(int index) {
+        if (streamingLexer == null && index >= tokenCount) {
+            // No tokens at all, e.g. a comment-only file: the arrays of a cache do not even have a slot 0.
+            currentChars = source;
+            currentStart = 0;
+            currentLength = 0;
+            currentText = null;
+            return;
+        }
+        int slot = slot(index);
+        currentChars = streamingLexer == null ? source : ringText[slot];
+        currentStart = starts[slot];
+        currentLength = lengths[slot];
+        boolean name = index < tokenCount && symbols[slot] >= 0;
+        currentText = name ? symbolPool.symbol(symbols[slot]) : null; // Names are never copied again.
     }
 
     /**
-     * Tokenizing a single line of jack code into a list of tokens.
-     * @param line as the jack code line.
-     * @return A list of tokens that been extracted from the jack line.
+     * @return where the token with the given index is kept: its own index, or its place in the ring when streaming.
      */
-    private List<String> tokenizeLine(String line) {
-        List<String> tokensLine = new ArrayList<>();
-        StringBuilder token = new StringBuilder(); // For elegant building purposes.
-        for (int i = 0; i < line.length(); i++) {
-            char c = line.charAt(i);
-            if (Character.isWhitespace(c)) {
-                // We are at the end of the token.
-                if (token.length() > 0) {
-                    tokensLine.add(token.toString());
-                    token.setLength(0); // Reset the StringBuilder after a token has been completed for reusing it to build the next token.
-                }
-            } else if (SYMBOLS.contains(c)) {
-                // Individual symbol : add it directly as a standalone token.
-                if (token.length() > 0) {
-                    tokensLine.add(token.toString());
-                    token.setLength(0); // As seen above.
-                }
-                tokensLine.add(String.valueOf(c)); //Adding the symbol as a token.
-            } else if (c == '"') {
-                int IndexOfEnd = line.indexOf('"', i + 1); // By this operation we find the second appearance of ' " '.
-                if (IndexOfEnd != -1) {
-                    tokensLine.add(line.substring(i , IndexOfEnd + 1)); // The string content.
-                    i = IndexOfEnd; // For continue iterations
-                }
-            } else {
-                token.append(c);
-                }
-            }
-        if (token.length() > 0) {
-            tokensLine.add(token.toString());
+    private int slot(int index) {
+        return streamingLexer == null ? index : index & (RING_SIZE - 1);
+    }
+
+    /**
+     * @return the index of the token k places after the current one, or -1 if there is no such token.
+     */
+    private int lookahead(int k) {
+        if (streamingLexer != null && k >= RING_SIZE) {
+            throw new IllegalArgumentException("Streaming tokenizer can look at most " + (RING_SIZE - 1) + " tokens ahead");
         }
-        return tokensLine;
+        int index = current + k;
+        return index < tokenCount || fill(index) ? index : -1;
+    }
+
+    /**
+     * In streaming mode, pulls tokens from the lexer into the ring until the given index is there.
+     * The token copied into a slot replaces one that is behind the current token.
+     * @return true if the token with the given index exists.
+     */
+    private boolean fill(int index) {
+        if (streamingLexer == null) {
+            return index < tokenCount;
+        }
+        while (tokenCount <= index) {
+            if (!streamingLexer.next()) {
+                return false;
+            }
+            int slot = tokenCount & (RING_SIZE - 1);
+            int length = streamingLexer.tokenLength();
+            if (ringText[slot].length < length) {
+                ringText[slot] = new char[Math.max(length, ringText[slot].length * 2)];
+            }
+            System.arraycopy(streamingLexer.buffer(), streamingLexer.tokenStart(), ringText[slot], 0, length);
+            starts[slot] = 0;
+            lengths[slot] = length;
+            types[slot] = streamingLexer.tokenType();
+            symbols[slot] = symbolOf(types[slot], ringText[slot], 0, length);
+            streamingLexer.locateToken();
+            ringLines[slot] = streamingLexer.tokenLine();
+            ringColumns[slot] = streamingLexer.tokenColumn();
+            tokenCount++;
         }
+        return true;
+    }
 
     /**
      * To maintain encapsulation and still access the currentToken.
+     * The String is created on the first call for every token, and reused by later calls.
      * @return current token.
      */
     public String getCurrentToken() {
-        return currentToken;
+        if (currentText == null && tokenCount > 0) {
+            currentText = new String(currentChars, currentStart, currentLength);
+        }
+        return currentText;
     }
     /**
      * To maintain encapsulation and still access the identifier.
      * @return current token.
      */
     public String getIdentifier() {
-        return currentToken;
+        return getCurrentToken();
     }
-}
 
+    /**
+     * The CharSequence returned by tokenText(), reading the current token straight from the source.
+     */
+    private final class TokenText implements CharSequence {
+        @Override
+        public int length() {
+            return currentLength;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return currentChars[currentStart + index];
+        }
 
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(currentChars, currentStart + start, end - start);
+        }
 
+        @Override
+        public String toString() {
+            return getCurrentToken();
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package jackanalyzer;
+
+import java.io.*;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+/**
+ * The OutputArchive interface is where the outputs of a run go when they are not written as separate
+ * files: GzipArchive for --gzip-archive, ZipArchive for --archive.
+ *
+ * How it works:
+ * - A worker asks for an entry for every output file and hands it to the XmlSink in place of the file.
+ * - When the file was parsed without a syntax error, the worker adds the entry to the archive.
+ *   Entries which are never added leave nothing behind.
+ * - add() may be called by several workers at once.
+ */
+interface OutputArchive extends Closeable {
+    /**
+     * Starts an entry, which receives the output of one file.
+     * @param output the file this output would have been written to without the archive.
+     * @return the entry, to be passed to add() when complete.
+     */
+    Entry entry(File output) throws IOException;
+
+    /**
+     * Adds a complete entry to the archive. The entry is closed first if it is still open.
+     * @param entry returned by entry().
+     * @throws IOException if writing the archive failed.
+     */
+    void add(Entry entry) throws IOException;
+
+    /**
+     * @param root the analyzed directory.
+     * @param output an output file under it.
+     * @return the name of the output in an archive: its path relative to root, with '/' separators.
+     */
+    static String entryName(Path root, File output) {
+        return root.toAbsolutePath().relativize(output.toPath().toAbsolutePath()).toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * One output file, buffered until it is added.
+     */
+    interface Entry extends WritableByteChannel {
+        /**
+         * @return the path of the output in the archive.
+         */
+        String name();
+    }
+}
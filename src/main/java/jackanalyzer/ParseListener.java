@@ -0,0 +1,54 @@
+package jackanalyzer;
+
+/**
+ * The ParseListener interface receives what the CompilationEngine recognizes, in source order.
+ *
+ * How it is called:
+ * - enter() when a grammar rule starts and exit() when it ends, properly nested.
+ * - symbol() for every symbol and terminal() for every other token, inside the rule they belong to.
+ * The text given to terminal() may be a buffer which is reused for later tokens,
+ * so it must be copied if it is needed after the call returns.
+ *
+ * XmlSink writes the calls as XML, and SyntaxTree.Builder records them in a compact tree
+ * which can be replayed to any number of listeners later. Tools which only need counts or a few
+ * constructs (see ParseStatistics) can listen directly and need neither a tree nor any output.
+ *
+ * Every method does nothing by default, so a listener overrides only the calls it cares about.
+ * Example, counting the let statements of a class:
+ *   int[] lets = {0};
+ *   new CompilationEngine(tokenizer, new ParseListener() {
+ *       public void enter(GrammarRule rule) {
+ *           if (rule == GrammarRule.LET_STATEMENT) lets[0]++;
+ *       }
+ *   }).compileClass();
+ */
+public interface ParseListener {
+    /**
+     * A grammar rule starts.
+     */
+    default void enter(GrammarRule rule) {
+    }
+
+    /**
+     * The grammar rule started last and not exited yet ends.
+     */
+    default void exit(GrammarRule rule) {
+    }
+
+    /**
+     * A symbol token.
+     * @param symbol one of the Jack symbols.
+     */
+    default void symbol(char symbol) {
+    }
+
+    /**
+     * A keyword, identifier, integer constant or string constant (without its quotes).
+     * @param type of the token.
+     * @param text array holding the characters.
+     * @param start where the text starts in the array.
+     * @param length the number of characters of the text.
+     */
+    default void terminal(TokenType type, char[] text, int start, int length) {
+    }
+}
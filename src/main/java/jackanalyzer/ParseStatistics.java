@@ -0,0 +1,72 @@
+package jackanalyzer;
+
+/**
+ * The ParseStatistics class is a ParseListener which only counts: how many times every grammar rule
+ * and every token type occurs, and how deep the rules nest.
+ *
+ * It keeps nothing but a few int arrays, so counting a whole program allocates nothing per token.
+ * Usage:
+ * ParseStatistics statistics = new ParseStatistics();
+ * new CompilationEngine(tokenizer, statistics).compileClass();
+ * int lets = statistics.count(GrammarRule.LET_STATEMENT);
+ * The same instance may be used for several classes, the counts add up.
+ */
+public final class ParseStatistics implements ParseListener {
+    private final int[] rules = new int[GrammarRule.values().length];
+    private final int[] tokens = new int[TokenType.values().length];
+    private int depth; // Current nesting of rules.
+    private int maxDepth;
+
+    @Override
+    public void enter(GrammarRule rule) {
+        rules[rule.ordinal()]++;
+        maxDepth = Math.max(maxDepth, ++depth);
+    }
+
+    @Override
+    public void exit(GrammarRule rule) {
+        depth--;
+    }
+
+    @Override
+    public void symbol(char symbol) {
+        tokens[TokenType.SYMBOL.ordinal()]++;
+    }
+
+    @Override
+    public void terminal(TokenType type, char[] text, int start, int length) {
+        tokens[type.ordinal()]++;
+    }
+
+    /**
+     * @return how many times the rule occurred.
+     */
+    public int count(GrammarRule rule) {
+        return rules[rule.ordinal()];
+    }
+
+    /**
+     * @return how many tokens of the type occurred.
+     */
+    public int count(TokenType type) {
+        return tokens[type.ordinal()];
+    }
+
+    /**
+     * @return the number of tokens of all types.
+     */
+    public int tokenCount() {
+        int total = 0;
+        for (int count : tokens) {
+            total += count;
+        }
+        return total;
+    }
+
+    /**
+     * @return the deepest nesting of rules, the class itself being 1.
+     */
+    public int maxDepth() {
+        return maxDepth;
+    }
+}
@@ -0,0 +1,240 @@
+package jackanalyzer;
+
+import java.util.Arrays;
+
+/**
+ * The SymbolPool class interns the keywords and identifiers of a whole run: every distinct name gets
+ * one small int id and one String, shared by all the tokenizers given the pool, on all worker threads.
+ * Names like Output, Screen, this or x then exist once per run instead of once per file, and the
+ * CompilationEngine compares keywords as ints.
+ *
+ * Lifetime: a pool never forgets a name, so it should live as long as a unit of work and no longer.
+ * The analyzer uses one pool per run, and a new one for every batch of files re-analyzed by --watch.
+ * A program embedding the analyzer can share a pool between the sources of a batch and drop it
+ * afterwards; a tokenizer constructed without a pool has a pool of its own.
+ *
+ * How it works:
+ * - The keywords are interned first, with the fixed ids 0 to 20 which are the constants below.
+ * - Names are looked up by a hash of their characters, straight from the tokenizer's buffer, so a
+ *   name which is already known costs no allocation at all.
+ * - The pool is split into 16 stripes by hash, every stripe an open addressing table with its own lock.
+ *   Known names, which are nearly all of them, are found without taking the lock; only a miss locks
+ *   the stripe, looks again and adds the name. So workers wait for each other only on new names of the same stripe.
+ * - The id of a new name holds its stripe and its index in the stripe, so symbol(id) needs no lock.
+ */
+public final class SymbolPool {
+    // The keywords, in the order of their ids.
+    static final int CLASS = 0;
+    static final int CONSTRUCTOR = 1;
+    static final int FUNCTION = 2;
+    static final int METHOD = 3;
+    static final int FIELD = 4;
+    static final int STATIC = 5;
+    static final int VAR = 6;
+    static final int INT = 7;
+    static final int CHAR = 8;
+    static final int BOOLEAN = 9;
+    static final int VOID = 10;
+    static final int TRUE = 11;
+    static final int FALSE = 12;
+    static final int NULL = 13;
+    static final int THIS = 14;
+    static final int LET = 15;
+    static final int DO = 16;
+    static final int IF = 17;
+    static final int ELSE = 18;
+    static final int WHILE = 19;
+    static final int RETURN = 20;
+
+    private static final String[] KEYWORDS = JackCharacters.KEYWORDS;
+    private static final int STRIPE_BITS = 4;
+    private static final int STRIPES = 1 << STRIPE_BITS;
+
+    private final Stripe[] stripes = new Stripe[STRIPES];
+
+    /**
+     * Creates an empty pool, knowing only the keywords.
+     */
+    public SymbolPool() {
+        for (int i = 0; i < STRIPES; i++) {
+            stripes[i] = new Stripe(i);
+        }
+        for (int id = 0; id < KEYWORDS.length; id++) {
+            String keyword = KEYWORDS[id];
+            char[] chars = keyword.toCharArray();
+            int hash = hash(chars, 0, chars.length);
+            stripes[hash & (STRIPES - 1)].add(hash, id);
+        }
+    }
+
+    /**
+     * @param buffer holding the name.
+     * @param start where the name starts in the buffer.
+     * @param length the number of characters of the name.
+     * @return the id of the name, the same for every call with the same characters.
+     */
+    int intern(char[] buffer, int start, int length) {
+        int hash = hash(buffer, start, length);
+        return stripes[hash & (STRIPES - 1)].intern(hash, buffer, start, length);
+    }
+
+    /**
+     * @param id returned by intern().
+     * @return the name, one String per id.
+     */
+    String symbol(int id) {
+        if (id < KEYWORDS.length) {
+            return KEYWORDS[id];
+        }
+        int local = id - KEYWORDS.length;
+        return stripes[local & (STRIPES - 1)].name(local >>> STRIPE_BITS);
+    }
+
+    /**
+     * @param id returned by intern().
+     * @return true if the name is one of the Jack keywords.
+     */
+    static boolean isKeyword(int id) {
+        return id < KEYWORDS.length;
+    }
+
+    /**
+     * @return a hash of the characters, with the low bits (the stripe) mixed from all of them.
+     */
+    private static int hash(char[] buffer, int start, int length) {
+        int hash = 0;
+        for (int i = start; i < start + length; i++) {
+            hash = 31 * hash + buffer[i];
+        }
+        return hash ^ (hash >>> 16) ^ (hash >>> 8);
+    }
+
+    /**
+     * One part of the pool: an open addressing table with linear probing, guarded by its own lock.
+     */
+    private static final class Stripe {
+        private volatile int[] hashes = new int[64]; // Replaced, never shrunk, when the table grows.
+        private volatile int[] ids = new int[64]; // -1 for a free slot.
+        private volatile String[] names = new String[16]; // By index in the stripe, read without the lock.
+        private int count; // Entries in the table, keywords included.
+        private int nameCount; // Names in names[].
+        private final int stripe; // The index of this stripe, part of every id it hands out.
+
+        Stripe(int stripe) {
+            this.stripe = stripe;
+            Arrays.fill(ids, -1);
+        }
+
+        /**
+         * @return the id of the name, added to the stripe if it is new.
+         */
+        int intern(int hash, char[] buffer, int start, int length) {
+            int id = find(hash, buffer, start, length);
+            return id >= 0 ? id : add(hash, buffer, start, length);
+        }
+
+        /**
+         * Looks for a name without the lock. A slot being written by another thread may look empty or
+         * not match, which only sends the caller to add(), where it is looked up again under the lock.
+         * @return the id of the name, or -1 if it was not found.
+         */
+        private int find(int hash, char[] buffer, int start, int length) {
+            int[] ids = this.ids;
+            int[] hashes = this.hashes;
+            if (hashes.length != ids.length) {
+                return -1; // Caught in the middle of a rehash.
+            }
+            String[] names = this.names;
+            int mask = ids.length - 1;
+            for (int slot = (hash >>> STRIPE_BITS) & mask; ids[slot] != -1; slot = (slot + 1) & mask) {
+                if (hashes[slot] == hash) {
+                    int id = ids[slot];
+                    int index = (id - KEYWORDS.length) >>> STRIPE_BITS;
+                    String name = id < KEYWORDS.length ? KEYWORDS[id] : index < names.length ? names[index] : null;
+                    if (name != null && name.length() == length && regionEquals(name, buffer, start)) {
+                        return id;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Adds a name under the lock, unless another thread added it meanwhile.
+         * @return the id of the name.
+         */
+        private synchronized int add(int hash, char[] buffer, int start, int length) {
+            int known = find(hash, buffer, start, length);
+            if (known >= 0) {
+                return known;
+            }
+            String name = new String(buffer, start, length);
+            if (nameCount == names.length) {
+                names = Arrays.copyOf(names, nameCount * 2);
+            }
+            names[nameCount] = name;
+            int id = KEYWORDS.length + ((nameCount++ << STRIPE_BITS) | stripe);
+            add(hash, id);
+            return id;
+        }
+
+        /**
+         * Without the lock: an id is only known after intern() returned it, which published its name.
+         */
+        String name(int index) {
+            return names[index];
+        }
+
+        /**
+         * Puts an entry into the table, growing it when it is half full. Called under the lock,
+         * or by the constructor of the pool.
+         */
+        void add(int hash, int id) {
+            if (2 * (count + 1) > ids.length) {
+                rehash();
+            }
+            int[] ids = this.ids;
+            int mask = ids.length - 1;
+            int slot = (hash >>> STRIPE_BITS) & mask;
+            while (ids[slot] != -1) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash; // The hash first: a reader seeing the id should see the hash as well.
+            ids[slot] = id;
+            count++;
+        }
+
+        /**
+         * Builds a table twice the size and only then publishes it, so readers see either table complete.
+         */
+        private void rehash() {
+            int[] oldHashes = hashes;
+            int[] oldIds = ids;
+            int[] newHashes = new int[oldIds.length * 2];
+            int[] newIds = new int[oldIds.length * 2];
+            Arrays.fill(newIds, -1);
+            int mask = newIds.length - 1;
+            for (int i = 0; i < oldIds.length; i++) {
+                if (oldIds[i] != -1) {
+                    int slot = (oldHashes[i] >>> STRIPE_BITS) & mask;
+                    while (newIds[slot] != -1) {
+                        slot = (slot + 1) & mask;
+                    }
+                    newHashes[slot] = oldHashes[i];
+                    newIds[slot] = oldIds[i];
+                }
+            }
+            hashes = newHashes;
+            ids = newIds;
+        }
+
+        private static boolean regionEquals(String name, char[] buffer, int start) {
+            for (int i = 0; i < name.length(); i++) {
+                if (name.charAt(i) != buffer[start + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,284 @@
+package jackanalyzer;
+
+import java.util.Arrays;
+
+/**
+ * The SyntaxTree class holds a parsed Jack class in a few flat arrays, so it can be parsed once
+ * and then handed to any number of backends (the XML writer, a code generator, a linter...).
+ *
+ * How it is stored:
+ * - A node is an int index. The arrays say for every node its kind (a grammar rule or a token type),
+ *   its first child and its next sibling, -1 meaning none.
+ * - The text of the tokens is copied into one shared char array, and a token node holds the start
+ *   and length of its text there. A symbol node holds its single character the same way.
+ * - So the whole tree is about ten objects, however many nodes it has, instead of one object per node.
+ *
+ * How it is used:
+ * - SyntaxTree.parse(tokenizer) runs the CompilationEngine with a Builder as its listener.
+ * - walk(listener) replays the tree, e.g. walk(new XmlSink(file)) writes the same XML as parsing
+ *   straight into the sink. The walk uses a stack array, not recursion, so deep trees are fine.
+ * - Backends with their own traversal use root(), firstChild(), nextSibling() and the node accessors.
+ */
+public final class SyntaxTree {
+    private static final int TERMINAL = 64; // Kinds from here on are tokens: TERMINAL + TokenType ordinal.
+    private static final GrammarRule[] RULES = GrammarRule.values();
+    private static final TokenType[] TOKEN_TYPES = TokenType.values();
+
+    private final int size; // Number of nodes, the root is node 0.
+    private final byte[] kinds;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[] textStart; // For token nodes, where their text starts in text.
+    private final int[] textLength;
+    private final char[] text; // The text of all the token nodes, one after another.
+    private final int depth; // Deepest nesting of rules, the stack size needed to walk the tree.
+
+    private SyntaxTree(Builder builder) {
+        this.size = builder.size;
+        this.kinds = builder.kinds;
+        this.firstChild = builder.firstChild;
+        this.nextSibling = builder.nextSibling;
+        this.textStart = builder.textStart;
+        this.textLength = builder.textLength;
+        this.text = builder.text;
+        this.depth = builder.maxDepth;
+    }
+
+    /**
+     * Parses one class into a tree.
+     * @param tokenizer providing the tokens of the class.
+     * @return the tree of the class.
+     */
+    public static SyntaxTree parse(JackTokenizer tokenizer) {
+        Builder builder = new Builder(2 * tokenizer.tokenCount()); // Rules and tokens, about as many rules as tokens.
+        new CompilationEngine(tokenizer, builder).compileClass();
+        return builder.build();
+    }
+
+    /**
+     * Replays the tree to a listener, in the same order the CompilationEngine called the builder.
+     * @param listener receiving the rules and tokens.
+     */
+    public void walk(ParseListener listener) {
+        int[] open = new int[depth + 1]; // The rule nodes entered and not exited yet.
+        int level = 0;
+        int node = size > 0 ? 0 : -1;
+        while (node != -1) {
+            if (isRule(node)) {
+                listener.enter(rule(node));
+                if (firstChild[node] != -1) {
+                    open[level++] = node;
+                    node = firstChild[node];
+                    continue;
+                }
+                listener.exit(rule(node));
+            } else if (kinds[node] == TERMINAL + TokenType.SYMBOL.ordinal()) {
+                listener.symbol(text[textStart[node]]);
+            } else {
+                listener.terminal(tokenType(node), text, textStart[node], textLength[node]);
+            }
+            // Go up until there is a next sibling, closing the rules on the way.
+            while (nextSibling[node] == -1 && level > 0) {
+                node = open[--level];
+                listener.exit(rule(node));
+            }
+            node = nextSibling[node];
+        }
+    }
+
+    /**
+     * @return the number of nodes.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the root node, the class, or -1 for an empty tree.
+     */
+    public int root() {
+        return size > 0 ? 0 : -1;
+    }
+
+    /**
+     * @return the first child of a node, or -1.
+     */
+    public int firstChild(int node) {
+        return firstChild[node];
+    }
+
+    /**
+     * @return the next sibling of a node, or -1.
+     */
+    public int nextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    /**
+     * @return true if the node is a grammar rule, false if it is a token.
+     */
+    public boolean isRule(int node) {
+        return kinds[node] < TERMINAL;
+    }
+
+    /**
+     * @return the grammar rule of a rule node.
+     */
+    public GrammarRule rule(int node) {
+        return RULES[kinds[node]];
+    }
+
+    /**
+     * @return the token type of a token node.
+     */
+    public TokenType tokenType(int node) {
+        return TOKEN_TYPES[kinds[node] - TERMINAL];
+    }
+
+    /**
+     * @return the array holding the text of all token nodes, see textStart() and textLength().
+     */
+    public char[] text() {
+        return text;
+    }
+
+    /**
+     * @return where the text of a token node starts in text().
+     */
+    public int textStart(int node) {
+        return textStart[node];
+    }
+
+    /**
+     * @return the length of the text of a token node.
+     */
+    public int textLength(int node) {
+        return textLength[node];
+    }
+
+    /**
+     * @return the text of a token node as a new String, e.g. "let", "Square" or "<".
+     */
+    public String tokenText(int node) {
+        return new String(text, textStart[node], textLength[node]);
+    }
+
+    /**
+     * The Builder class turns the calls of the CompilationEngine into a SyntaxTree.
+     * The arrays grow by doubling, so building allocates only a few arrays per tree.
+     */
+    public static final class Builder implements ParseListener {
+        private int size;
+        private byte[] kinds;
+        private int[] firstChild;
+        private int[] nextSibling;
+        private int[] textStart;
+        private int[] textLength;
+        private char[] text;
+        private int textSize;
+        private int[] open = new int[32]; // The rule nodes entered and not exited yet.
+        private int[] lastChild = new int[32]; // The last child added to each of them, or -1.
+        private int level; // Number of open rules.
+        private int maxDepth;
+        private int lastRoot = -1; // The last node added outside of any rule.
+
+        public Builder() {
+            this(256);
+        }
+
+        /**
+         * @param expectedNodes how many nodes the tree will probably have, so the arrays rarely need to grow.
+         */
+        Builder(int expectedNodes) {
+            int capacity = Math.max(expectedNodes, 16);
+            kinds = new byte[capacity];
+            firstChild = new int[capacity];
+            nextSibling = new int[capacity];
+            textStart = new int[capacity];
+            textLength = new int[capacity];
+            text = new char[capacity * 2];
+        }
+
+        @Override
+        public void enter(GrammarRule rule) {
+            int node = add(rule.ordinal());
+            if (level == open.length) {
+                open = Arrays.copyOf(open, level * 2);
+                lastChild = Arrays.copyOf(lastChild, level * 2);
+            }
+            open[level] = node;
+            lastChild[level] = -1;
+            level++;
+            maxDepth = Math.max(maxDepth, level);
+        }
+
+        @Override
+        public void exit(GrammarRule rule) {
+            level--;
+        }
+
+        @Override
+        public void symbol(char symbol) {
+            int node = add(TERMINAL + TokenType.SYMBOL.ordinal());
+            ensureText(1);
+            textStart[node] = textSize;
+            textLength[node] = 1;
+            text[textSize++] = symbol;
+        }
+
+        @Override
+        public void terminal(TokenType type, char[] source, int start, int length) {
+            int node = add(TERMINAL + type.ordinal());
+            ensureText(length);
+            textStart[node] = textSize;
+            textLength[node] = length;
+            System.arraycopy(source, start, text, textSize, length); // The source may be reused by the tokenizer.
+            textSize += length;
+        }
+
+        /**
+         * @return the tree of everything received so far.
+         */
+        public SyntaxTree build() {
+            return new SyntaxTree(this);
+        }
+
+        /**
+         * Appends a node as the last child of the innermost open rule.
+         * @return the new node.
+         */
+        private int add(int kind) {
+            if (size == kinds.length) {
+                int capacity = size * 2;
+                kinds = Arrays.copyOf(kinds, capacity);
+                firstChild = Arrays.copyOf(firstChild, capacity);
+                nextSibling = Arrays.copyOf(nextSibling, capacity);
+                textStart = Arrays.copyOf(textStart, capacity);
+                textLength = Arrays.copyOf(textLength, capacity);
+            }
+            int node = size++;
+            kinds[node] = (byte) kind;
+            firstChild[node] = -1;
+            nextSibling[node] = -1;
+            if (level == 0) {
+                if (lastRoot != -1) {
+                    nextSibling[lastRoot] = node;
+                }
+                lastRoot = node;
+            } else if (lastChild[level - 1] == -1) {
+                firstChild[open[level - 1]] = node;
+                lastChild[level - 1] = node;
+            } else {
+                nextSibling[lastChild[level - 1]] = node;
+                lastChild[level - 1] = node;
+            }
+            return node;
+        }
+
+        private void ensureText(int length) {
+            if (textSize + length > text.length) {
+                text = Arrays.copyOf(text, Math.max(text.length * 2, textSize + length));
+            }
+        }
+    }
+}
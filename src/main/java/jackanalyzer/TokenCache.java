@@ -0,0 +1,244 @@
+package jackanalyzer;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * The TokenCache class reads and writes .jtok files: the tokens of a .jack file in binary form,
+ * so analyzing an unchanged file again does not need to lex it again (see --token-cache).
+ *
+ * How it works:
+ * - The file starts with "JTOK", the format version and the SHA-256 hash of the source it was made from.
+ *   A cache whose hash does not match the current source is ignored and written again.
+ * - The text of every distinct token is stored once, in a string table. Every token is its index into
+ *   that table, its type, and its offset in the source, which together with the line starts gives the
+ *   line and column of a syntax error.
+ * - All numbers are big-endian ints, the int arrays come first so they stay aligned, then the
+ *   characters of the string table, then the types as bytes.
+ * - Reading maps the file and copies the arrays out in bulk, nothing is parsed token by token.
+ *   The arrays are then checked (type ordinals, ordered offsets, increasing string and line starts), so a damaged
+ *   file is ignored like a missing one instead of failing later in the parser.
+ *
+ * Layout: magic, version, hash[32], tokenCount, stringCount, textLength, lineCount,
+ * ids[tokenCount], offsets[tokenCount], stringStarts[stringCount + 1], lineStarts[lineCount],
+ * text[textLength] (UTF-16 chars), types[tokenCount].
+ */
+final class TokenCache {
+    private static final int MAGIC = 0x4A544F4B; // "JTOK"
+    private static final int VERSION = 1; // Bump whenever the layout or the lexer output changes.
+    private static final int HASH_SIZE = 32; // SHA-256.
+    private static final int HEADER_SIZE = 4 + 4 + HASH_SIZE + 4 * 4;
+
+    final char[] text; // The string table, the tokens point into it.
+    final int[] starts; // Where each token starts in text.
+    final int[] lengths; // The number of characters of each token.
+    final byte[] types; // TokenType ordinals.
+    final int[] offsets; // Where each token starts in the original source.
+    final int[] lineStarts; // Where each line starts in the original source, the first one at 0.
+    final int tokenCount;
+
+    private TokenCache(char[] text, int[] starts, int[] lengths, byte[] types, int[] offsets, int[] lineStarts) {
+        this.text = text;
+        this.starts = starts;
+        this.lengths = lengths;
+        this.types = types;
+        this.offsets = offsets;
+        this.lineStarts = lineStarts;
+        this.tokenCount = types.length;
+    }
+
+    /**
+     * @param source the bytes of a .jack file.
+     * @return the hash a cache of this source is stored with.
+     */
+    static byte[] hash(byte[] source) {
+        return BuildManifest.sha256().digest(source);
+    }
+
+    /**
+     * Reads a cache file.
+     * @param cacheFile the .jtok file.
+     * @param hash of the current source, see hash().
+     * @return the cached tokens, or null if there is no cache, it is of another source or version, or it is damaged.
+     * @throws IOException if an existing file cannot be read.
+     */
+    static TokenCache read(File cacheFile, byte[] hash) throws IOException {
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+                return null;
+            }
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return null;
+            }
+            byte[] storedHash = new byte[HASH_SIZE];
+            buffer.get(storedHash);
+            if (!Arrays.equals(storedHash, hash)) {
+                return null; // The source changed since the cache was written.
+            }
+            int tokenCount = buffer.getInt();
+            int stringCount = buffer.getInt();
+            int textLength = buffer.getInt();
+            int lineCount = buffer.getInt();
+            long expected = HEADER_SIZE + 4L * (2L * tokenCount + stringCount + 1 + lineCount) + 2L * textLength + tokenCount;
+            if (tokenCount < 0 || stringCount < 0 || textLength < 0 || lineCount < 1 || expected != size) {
+                return null;
+            }
+            int[] ids = new int[tokenCount];
+            int[] offsets = new int[tokenCount];
+            int[] stringStarts = new int[stringCount + 1];
+            int[] lineStarts = new int[lineCount];
+            char[] text = new char[textLength];
+            byte[] types = new byte[tokenCount];
+            IntBuffer ints = buffer.asIntBuffer();
+            ints.get(ids).get(offsets).get(stringStarts).get(lineStarts);
+            buffer.position(buffer.position() + 4 * ints.position());
+            CharBuffer chars = buffer.asCharBuffer();
+            chars.get(text);
+            buffer.position(buffer.position() + 2 * textLength);
+            buffer.get(types);
+            if (!isValid(types, offsets, stringStarts, textLength, lineStarts)) {
+                return null;
+            }
+
+            int[] starts = new int[tokenCount];
+            int[] lengths = new int[tokenCount];
+            for (int i = 0; i < tokenCount; i++) {
+                int id = ids[i];
+                if (id < 0 || id >= stringCount) {
+                    return null;
+                }
+                starts[i] = stringStarts[id];
+                lengths[i] = stringStarts[id + 1] - stringStarts[id];
+            }
+            return new TokenCache(text, starts, lengths, types, offsets, lineStarts);
+        }
+    }
+
+    /**
+     * @return true if every type is a TokenType ordinal, the offsets are not negative and never go back,
+     * the strings start at 0 and follow each other up to the end of the text, each at least one character long,
+     * and the lines start at 0 and increase.
+     */
+    private static boolean isValid(byte[] types, int[] offsets, int[] stringStarts, int textLength, int[] lineStarts) {
+        int typeCount = TokenType.values().length;
+        for (byte type : types) {
+            if (type < 0 || type >= typeCount) {
+                return false;
+            }
+        }
+        if (offsets.length > 0 && offsets[0] < 0) {
+            return false;
+        }
+        for (int i = 1; i < offsets.length; i++) {
+            if (offsets[i] < offsets[i - 1]) {
+                return false; // Tokens come in source order.
+            }
+        }
+        if (stringStarts[0] != 0 || stringStarts[stringStarts.length - 1] != textLength) {
+            return false;
+        }
+        for (int i = 1; i < stringStarts.length; i++) {
+            if (stringStarts[i] <= stringStarts[i - 1]) {
+                return false; // Token texts are never empty.
+            }
+        }
+        if (lineStarts[0] != 0) {
+            return false;
+        }
+        for (int i = 1; i < lineStarts.length; i++) {
+            if (lineStarts[i] <= lineStarts[i - 1]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Writes the tokens of a source as a cache file. The old file is replaced in one step,
+     * so a reader never sees half a cache, and every writer uses a temporary file of its own.
+     * @param cacheFile the .jtok file.
+     * @param hash of the source, see hash().
+     * @param source the characters of the source.
+     * @param length the number of valid characters in source.
+     * @param starts where each token starts in source.
+     * @param lengths the number of characters of each token.
+     * @param types the TokenType ordinals of the tokens.
+     * @param tokenCount the number of tokens.
+     * @throws IOException if the file cannot be written.
+     */
+    static void write(File cacheFile, byte[] hash, char[] source, int length,
+                      int[] starts, int[] lengths, byte[] types, int tokenCount) throws IOException {
+        // The string table: every distinct token text once, in the order of first appearance.
+        Map<String, Integer> ids = new HashMap<>();
+        StringBuilder text = new StringBuilder();
+        int[] stringStarts = new int[16];
+        int[] tokenIds = new int[tokenCount];
+        for (int i = 0; i < tokenCount; i++) {
+            String token = new String(source, starts[i], lengths[i]);
+            Integer id = ids.get(token);
+            if (id == null) {
+                id = ids.size();
+                ids.put(token, id);
+                if (id + 1 >= stringStarts.length) {
+                    stringStarts = Arrays.copyOf(stringStarts, stringStarts.length * 2);
+                }
+                stringStarts[id] = text.length();
+                text.append(token);
+            }
+            tokenIds[i] = id;
+        }
+        int stringCount = ids.size();
+        stringStarts[stringCount] = text.length();
+
+        int[] lineStarts = new int[16];
+        int lineCount = 1; // lineStarts[0] = 0.
+        for (int i = 0; i < length; i++) {
+            if (source[i] == '\n') {
+                if (lineCount == lineStarts.length) {
+                    lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+                }
+                lineStarts[lineCount++] = i + 1;
+            }
+        }
+
+        long size = HEADER_SIZE + 4L * (2L * tokenCount + stringCount + 1 + lineCount) + 2L * text.length() + tokenCount;
+        ByteBuffer buffer = ByteBuffer.allocate(Math.toIntExact(size));
+        buffer.putInt(MAGIC).putInt(VERSION).put(hash)
+                .putInt(tokenCount).putInt(stringCount).putInt(text.length()).putInt(lineCount);
+        IntBuffer ints = buffer.asIntBuffer();
+        ints.put(tokenIds, 0, tokenCount).put(starts, 0, tokenCount); // The offsets in the source are the starts.
+        ints.put(stringStarts, 0, stringCount + 1).put(lineStarts, 0, lineCount);
+        buffer.position(buffer.position() + 4 * ints.position());
+        CharBuffer chars = buffer.asCharBuffer();
+        chars.put(text.toString());
+        buffer.position(buffer.position() + 2 * chars.position());
+        buffer.put(types, 0, tokenCount);
+        buffer.flip();
+
+        Path file = cacheFile.toPath().toAbsolutePath();
+        // A temporary file of its own, so two runs writing the same cache never write into each other's file.
+        Path temporary = Files.createTempFile(file.getParent(), file.getFileName().toString(), ".tmp");
+        boolean moved = false;
+        try {
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            moved = true;
+        } finally {
+            if (!moved) {
+                Files.deleteIfExists(temporary);
+            }
+        }
+    }
+}
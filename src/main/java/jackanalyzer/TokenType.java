@@ -0,0 +1,37 @@
+package jackanalyzer;
+
+/**
+ * The lexical categories of Jack tokens.
+ * Every token is classified exactly once, while the JackLexer scans it,
+ * and the JackTokenizer keeps the ordinal of its type next to it.
+ */
+public enum TokenType {
+    KEYWORD("keyword"), // Words like "class", "method", "if", "while", etc.
+    SYMBOL("symbol"), // Characters like '{', '}', '=', '+', etc.
+    IDENTIFIER("identifier"), // Names of variables, classes, methods, etc.
+    INT_CONST("integerConstant"), // Numbers like 123.
+    STRING_CONST("stringConstant"); // Text in quotes, like "hello".
+
+    private static final TokenType[] VALUES = values(); // Cached, values() copies the array on every call.
+
+    private final String xmlTag; // The element name used for this type in the XML output.
+
+    TokenType(String xmlTag) {
+        this.xmlTag = xmlTag;
+    }
+
+    /**
+     * @return the XML element name of this token type, e.g. "integerConstant".
+     */
+    public String xmlTag() {
+        return xmlTag;
+    }
+
+    /**
+     * @param ordinal as stored by the tokenizer.
+     * @return the token type with the given ordinal.
+     */
+    static TokenType of(int ordinal) {
+        return VALUES[ordinal];
+    }
+}
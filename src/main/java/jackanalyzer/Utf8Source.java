@@ -0,0 +1,109 @@
+package jackanalyzer;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.*;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The Utf8Source class turns UTF-8 encoded Jack source into the chars the lexer walks: a .jack file
+ * mapped into memory instead of read through a FileReader (see --mmap), or bytes which are already
+ * in memory (see the byte[] and ByteBuffer constructors of JackTokenizer).
+ *
+ * How it works:
+ * - A file is mapped read-only, so there is no read() copying it from the page cache into a byte buffer.
+ * - Jack code is nearly always plain ASCII, and an ASCII byte is its char: the bytes are widened
+ *   straight into the char buffer, without a charset decoder. Bytes of a mapping or of a direct buffer
+ *   are copied out a chunk at a time first, bytes on the heap are read in place.
+ * - Non-ASCII characters may only appear inside string constants and comments. At the first byte
+ *   above 127 the rest of the input is handed to a UTF-8 decoder, which replaces malformed input
+ *   like FileReader does (UTF-8 is the default charset since Java 18).
+ * - UTF-8 never has more chars than bytes, so the char buffer is allocated once, with the input size.
+ * - A mapped file must not be truncated while it is read, as with any mapped file.
+ */
+final class Utf8Source {
+    private static final int CHUNK_SIZE = 8192; // Bytes copied out of a mapping per step, small enough for the L1 cache.
+
+    final char[] chars; // The decoded source.
+    final int length; // The number of valid chars.
+
+    private Utf8Source(char[] chars, int length) {
+        this.chars = chars;
+        this.length = length;
+    }
+
+    /**
+     * @param file the .jack file.
+     * @return its characters.
+     * @throws IOException if the file cannot be read or is larger than 2 GB.
+     */
+    static Utf8Source read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be mapped (" + size + " bytes)");
+            }
+            return decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, size));
+        }
+    }
+
+    /**
+     * @param bytes UTF-8 encoded source, from its position to its limit. The position is moved to the limit.
+     * @return its characters.
+     */
+    static Utf8Source decode(ByteBuffer bytes) {
+        char[] chars = new char[Math.max(16, bytes.remaining())];
+        int length = 0;
+        if (bytes.hasArray()) {
+            int start = bytes.arrayOffset() + bytes.position();
+            length = widen(bytes.array(), start, bytes.remaining(), chars, 0);
+            bytes.position(bytes.position() + length);
+        } else {
+            byte[] chunk = new byte[Math.min(CHUNK_SIZE, bytes.remaining())];
+            while (bytes.hasRemaining()) {
+                int count = Math.min(chunk.length, bytes.remaining());
+                bytes.get(chunk, 0, count);
+                int ascii = widen(chunk, 0, count, chars, length);
+                length += ascii;
+                if (ascii < count) {
+                    bytes.position(bytes.position() - count + ascii); // Back to the first non-ASCII byte.
+                    break;
+                }
+            }
+        }
+        if (bytes.hasRemaining()) {
+            length = decode(bytes, chars, length);
+        }
+        return new Utf8Source(chars, length);
+    }
+
+    /**
+     * Copies ASCII bytes into chars, up to the first byte which is not ASCII.
+     * @return the number of bytes copied.
+     */
+    private static int widen(byte[] bytes, int start, int count, char[] chars, int offset) {
+        for (int i = 0; i < count; i++) {
+            byte b = bytes[start + i];
+            if (b < 0) {
+                return i;
+            }
+            chars[offset + i] = (char) b;
+        }
+        return count;
+    }
+
+    /**
+     * Decodes the remaining bytes as UTF-8 into chars.
+     * @return the number of valid chars.
+     */
+    private static int decode(ByteBuffer bytes, char[] chars, int offset) {
+        CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        CharBuffer out = CharBuffer.wrap(chars, offset, chars.length - offset);
+        decoder.decode(bytes, out, true); // Cannot overflow: one char at most per byte.
+        decoder.flush(out);
+        return out.position();
+    }
+}
@@ -0,0 +1,48 @@
+package jackanalyzer;
+
+/**
+ * The VectorScan class switches the lexer's optional SIMD fast path (see VectorScanner) on and off.
+ *
+ * The fast path needs the incubating jdk.incubator.vector module, which the JVM only has when started
+ * with --add-modules jdk.incubator.vector. Without it enable() refuses, and the scalar lexer is used.
+ * Lexers pick the setting up when they are created, so it is meant to be set once, before the analysis.
+ */
+public final class VectorScan {
+    private static volatile boolean enabled;
+
+    private VectorScan() {
+    }
+
+    /**
+     * @return true if the JVM has the jdk.incubator.vector module.
+     */
+    public static boolean available() {
+        return ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+    }
+
+    /**
+     * Makes lexers created from now on skip comments and strings with vector instructions.
+     * @return false if the Vector API is not available, then nothing changes.
+     */
+    public static boolean enable() {
+        if (!available()) {
+            return false;
+        }
+        enabled = true;
+        return true;
+    }
+
+    /**
+     * Makes lexers created from now on scan one character at a time again.
+     */
+    public static void disable() {
+        enabled = false;
+    }
+
+    /**
+     * @return true if the fast path is on.
+     */
+    static boolean enabled() {
+        return enabled;
+    }
+}
@@ -0,0 +1,63 @@
+package jackanalyzer;
+
+import jdk.incubator.vector.*;
+
+/**
+ * The VectorScanner class finds the end of comments and string constants many characters at a time,
+ * with the incubating Vector API. Only loaded when the vector scan is enabled (see VectorScan), so the
+ * analyzer runs without the jdk.incubator.vector module too.
+ *
+ * How it works:
+ * - The characters are loaded into a vector of the preferred size (16 chars on a 256-bit machine, 32 on a
+ *   512-bit one), compared with the wanted delimiters all at once, and the first match is taken from the mask.
+ * - The tail shorter than a vector is scanned one character at a time.
+ * - Only the position is found here; what the delimiter means is still decided by the lexer's state machine.
+ */
+final class VectorScanner {
+    private static final VectorSpecies<Short> SPECIES = ShortVector.SPECIES_PREFERRED;
+
+    private VectorScanner() {
+    }
+
+    /**
+     * @return the index of the first target in buffer[from, to), or to if there is none.
+     */
+    static int indexOf(char[] buffer, int from, int to, char target) {
+        int i = from;
+        int bound = from + SPECIES.loopBound(Math.max(to - from, 0));
+        for (; i < bound; i += SPECIES.length()) {
+            VectorMask<Short> hits = ShortVector.fromCharArray(SPECIES, buffer, i).eq((short) target);
+            if (hits.anyTrue()) {
+                return i + hits.firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            if (buffer[i] == target) {
+                return i;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * @return the index of the first a, b or c in buffer[from, to), or to if there is none.
+     */
+    static int indexOfAny(char[] buffer, int from, int to, char a, char b, char c) {
+        int i = from;
+        int bound = from + SPECIES.loopBound(Math.max(to - from, 0));
+        for (; i < bound; i += SPECIES.length()) {
+            ShortVector chars = ShortVector.fromCharArray(SPECIES, buffer, i);
+            VectorMask<Short> hits = chars.eq((short) a).or(chars.eq((short) b)).or(chars.eq((short) c));
+            if (hits.anyTrue()) {
+                return i + hits.firstTrue();
+            }
+        }
+        for (; i < to; i++) {
+            char x = buffer[i];
+            if (x == a || x == b || x == c) {
+                return i;
+            }
+        }
+        return to;
+    }
+}
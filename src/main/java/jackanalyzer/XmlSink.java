@@ -0,0 +1,327 @@
+package jackanalyzer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The XmlSink class writes the XML elements produced by the CompilationEngine, as its ParseListener
+ * (or by SyntaxTree.walk(), which gives the same output).
+ *
+ * How it works:
+ * - Everything is encoded straight into one large direct byte buffer, which is written to the
+ *   channel in big chunks only when it is full (and when the sink is closed).
+ * - The indentation of every nesting level is precomputed, and so are all the fixed lines:
+ *   the opening and closing tag of every grammar rule and every "<symbol> ; </symbol>" line.
+ * - Token text is copied from the tokenizer's buffer, so no String is built for an output line.
+ *
+ * The output is the same as the one written before with PrintWriter: two spaces per level,
+ * one element per line, lines ending with '\n'.
+ *
+ * In compact mode (for machine consumers) the same elements are written without indentation
+ * and without line breaks, from copies of the same tables with the '\n' removed.
+ *
+ * A second sink may receive a copy of every terminal (see copyTokensTo), which gives the flat
+ * token list of the xxxT.xml files in the same pass, without tokenizing the input again.
+ */
+public class XmlSink implements ParseListener, Closeable {
+    private static final int BUFFER_SIZE = 1 << 16; // 64 KB per write.
+
+    private static final byte[][] INDENT = new byte[64][]; // Indentation of each level, for the usual depths.
+    private static final byte[][] OPEN_RULE = new byte[GrammarRule.values().length][]; // "<rule>\n"
+    private static final byte[][] CLOSE_RULE = new byte[GrammarRule.values().length][]; // "</rule>\n"
+    private static final byte[][] OPEN_TERMINAL = new byte[TokenType.values().length][]; // "<type> "
+    private static final byte[][] CLOSE_TERMINAL = new byte[TokenType.values().length][]; // " </type>\n"
+    private static final byte[][] SYMBOL_LINE = new byte[128][]; // "<symbol> c </symbol>\n", escaped as needed.
+    private static final byte[] OPEN_TOKENS = encode("<tokens>\n");
+    private static final byte[] CLOSE_TOKENS = encode("</tokens>\n");
+
+    static {
+        for (int level = 0; level < INDENT.length; level++) {
+            INDENT[level] = encode("  ".repeat(level)); // Two spaces per level.
+        }
+        for (GrammarRule rule : GrammarRule.values()) {
+            OPEN_RULE[rule.ordinal()] = encode("<" + rule.xmlTag() + ">\n");
+            CLOSE_RULE[rule.ordinal()] = encode("</" + rule.xmlTag() + ">\n");
+        }
+        for (TokenType type : TokenType.values()) {
+            OPEN_TERMINAL[type.ordinal()] = encode("<" + type.xmlTag() + "> ");
+            CLOSE_TERMINAL[type.ordinal()] = encode(" </" + type.xmlTag() + ">\n");
+        }
+        for (char c : "{}()[].,;+-*/&|<>=~".toCharArray()) {
+            // Escape special characters for XML.
+            String text = c == '<' ? "&lt;" : c == '>' ? "&gt;" : c == '&' ? "&amp;" : String.valueOf(c);
+            SYMBOL_LINE[c] = encode("<symbol> " + text + " </symbol>\n");
+        }
+    }
+
+    // The same tables without the line breaks, for compact mode.
+    private static final byte[][] COMPACT_OPEN_RULE = withoutNewlines(OPEN_RULE);
+    private static final byte[][] COMPACT_CLOSE_RULE = withoutNewlines(CLOSE_RULE);
+    private static final byte[][] COMPACT_CLOSE_TERMINAL = withoutNewlines(CLOSE_TERMINAL);
+    private static final byte[][] COMPACT_SYMBOL_LINE = withoutNewlines(SYMBOL_LINE);
+    private static final byte[] COMPACT_OPEN_TOKENS = encode("<tokens>");
+    private static final byte[] COMPACT_CLOSE_TOKENS = encode("</tokens>");
+
+    private final WritableByteChannel channel; // Where the bytes go.
+    private final ByteBuffer buffer; // Direct for files and channels, on the heap for streams and Appendables.
+    private int level = 0; // Current nesting level, for the indentation.
+    private XmlSink tokens; // Receives a copy of every terminal, or null.
+    private final boolean compact; // No indentation and no line breaks.
+    // The tables of the chosen mode.
+    private final byte[][] openRule;
+    private final byte[][] closeRule;
+    private final byte[][] closeTerminal;
+    private final byte[][] symbolLine;
+    private final byte[] openTokens;
+    private final byte[] closeTokens;
+
+    /**
+     * Creates a sink writing to the given channel. The channel is closed by close().
+     * @param channel receiving the XML bytes.
+     */
+    public XmlSink(WritableByteChannel channel) {
+        this(channel, false);
+    }
+
+    /**
+     * Creates a sink writing to the given channel. The channel is closed by close().
+     * @param channel receiving the XML bytes.
+     * @param compact true to write the elements without indentation and line breaks.
+     */
+    public XmlSink(WritableByteChannel channel, boolean compact) {
+        this(channel, compact, ByteBuffer.allocateDirect(BUFFER_SIZE));
+    }
+
+    /**
+     * Creates a sink writing to the given stream, e.g. of a socket or a ByteArrayOutputStream.
+     * The stream is closed by close().
+     * @param out receiving the XML bytes, UTF-8 encoded.
+     * @param compact true to write the elements without indentation and line breaks.
+     */
+    public XmlSink(OutputStream out, boolean compact) {
+        // No direct buffer: the stream copies from a heap array anyway, and a heap buffer is freed with the sink.
+        this(Channels.newChannel(out), compact, ByteBuffer.allocate(BUFFER_SIZE));
+    }
+
+    /**
+     * Creates a sink appending the XML as text, e.g. to a StringBuilder or a Writer.
+     * A different name than the constructors, as a PrintStream is both an OutputStream and an Appendable.
+     * @param out receiving the XML, flushed if it is Flushable and closed if it is Closeable by close().
+     * @param compact true to write the elements without indentation and line breaks.
+     * @return the sink.
+     */
+    public static XmlSink appendingTo(Appendable out, boolean compact) {
+        return new XmlSink(new AppendableChannel(out), compact, ByteBuffer.allocate(BUFFER_SIZE));
+    }
+
+    private XmlSink(WritableByteChannel channel, boolean compact, ByteBuffer buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.compact = compact;
+        this.openRule = compact ? COMPACT_OPEN_RULE : OPEN_RULE;
+        this.closeRule = compact ? COMPACT_CLOSE_RULE : CLOSE_RULE;
+        this.closeTerminal = compact ? COMPACT_CLOSE_TERMINAL : CLOSE_TERMINAL;
+        this.symbolLine = compact ? COMPACT_SYMBOL_LINE : SYMBOL_LINE;
+        this.openTokens = compact ? COMPACT_OPEN_TOKENS : OPEN_TOKENS;
+        this.closeTokens = compact ? COMPACT_CLOSE_TOKENS : CLOSE_TOKENS;
+    }
+
+    /**
+     * Creates a sink writing to the given file, replacing it if it exists.
+     * @param outputFile is the file where the XML output will be written.
+     * @throws IOException if the file cannot be opened for writing.
+     */
+    public XmlSink(File outputFile) throws IOException {
+        this(outputFile, false);
+    }
+
+    /**
+     * Creates a sink writing to the given file, replacing it if it exists.
+     * @param outputFile is the file where the XML output will be written.
+     * @param compact true to write the elements without indentation and line breaks.
+     * @throws IOException if the file cannot be opened for writing.
+     */
+    public XmlSink(File outputFile, boolean compact) throws IOException {
+        this(FileChannel.open(outputFile.toPath(),
+                StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING), compact);
+    }
+
+    /**
+     * Copies every terminal written from now on to another sink, as the token list of a xxxT.xml file:
+     * "<tokens>", then one unindented line per token, and "</tokens>" when this sink is closed.
+     * @param tokens receiving the token list, closed together with this sink.
+     */
+    public void copyTokensTo(XmlSink tokens) {
+        this.tokens = tokens;
+        tokens.put(tokens.openTokens);
+    }
+
+    /**
+     * Writes the opening tag of a rule and increases the indentation for its content.
+     */
+    @Override
+    public void enter(GrammarRule rule) {
+        indent();
+        put(openRule[rule.ordinal()]);
+        level++;
+    }
+
+    /**
+     * Decreases the indentation and writes the closing tag of a rule.
+     */
+    @Override
+    public void exit(GrammarRule rule) {
+        level--;
+        indent();
+        put(closeRule[rule.ordinal()]);
+    }
+
+    /**
+     * Writes a symbol element, e.g. "<symbol> &lt; </symbol>".
+     * @param symbol one of the Jack symbols.
+     */
+    @Override
+    public void symbol(char symbol) {
+        indent();
+        put(symbolLine[symbol]);
+        if (tokens != null) {
+            tokens.put(tokens.symbolLine[symbol]); // Level 0, no indentation.
+        }
+    }
+
+    /**
+     * Writes a terminal element whose text is the given span of characters, e.g. "<identifier> x </identifier>".
+     * The text is written as is.
+     * @param type decides the element name.
+     * @param text array holding the characters.
+     * @param start where the text starts in the array.
+     * @param length the number of characters of the text.
+     */
+    @Override
+    public void terminal(TokenType type, char[] text, int start, int length) {
+        indent();
+        put(OPEN_TERMINAL[type.ordinal()]);
+        putChars(text, start, length);
+        put(closeTerminal[type.ordinal()]);
+        if (tokens != null) {
+            tokens.terminal(type, text, start, length);
+        }
+    }
+
+    /**
+     * Writes everything buffered so far to the channel.
+     * @throws UncheckedIOException if writing fails.
+     */
+    public void flush() {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        buffer.clear();
+    }
+
+    /**
+     * Flushes the output and closes the channel, and the token list sink if there is one.
+     * @throws IOException if writing or closing fails.
+     */
+    @Override
+    public void close() throws IOException {
+        try (XmlSink tokenSink = tokens) { // Closed even when this output fails.
+            if (tokenSink != null) {
+                tokenSink.put(tokenSink.closeTokens);
+            }
+            try {
+                flush();
+            } catch (UncheckedIOException e) {
+                channel.close();
+                throw e.getCause();
+            }
+            channel.close();
+        }
+    }
+
+    /**
+     * Writes the indentation of the current level.
+     */
+    private void indent() {
+        if (compact) {
+            return;
+        }
+        if (level < INDENT.length) {
+            put(INDENT[level]);
+        } else {
+            // Deeper than the table, write the widest entry as many times as needed.
+            for (int remaining = level; remaining > 0; remaining -= INDENT.length - 1) {
+                put(INDENT[Math.min(remaining, INDENT.length - 1)]);
+            }
+        }
+    }
+
+    /**
+     * Appends pre-encoded bytes to the buffer.
+     */
+    private void put(byte[] bytes) {
+        if (buffer.remaining() < bytes.length) {
+            flush();
+        }
+        buffer.put(bytes); // Pre-encoded constants are always much smaller than the buffer.
+    }
+
+    /**
+     * Appends characters to the buffer, as UTF-8.
+     */
+    private void putChars(char[] text, int start, int length) {
+        int end = start + length;
+        for (int i = start; i < end; i++) {
+            if (buffer.remaining() < 4) {
+                flush();
+            }
+            char c = text[i];
+            if (c < 0x80) {
+                buffer.put((byte) c); // The common case, Jack code is almost always ASCII.
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(text[i + 1])) {
+                int codePoint = Character.toCodePoint(c, text[++i]);
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else if (Character.isSurrogate(c)) {
+                buffer.put((byte) '?'); // Unpaired surrogate, as the JDK encoder does.
+            } else {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            }
+        }
+    }
+
+    /**
+     * @return copies of the encoded constants with the '\n' removed, null entries stay null.
+     */
+    private static byte[][] withoutNewlines(byte[][] table) {
+        byte[][] compact = new byte[table.length][];
+        for (int i = 0; i < table.length; i++) {
+            if (table[i] != null) {
+                compact[i] = new String(table[i], StandardCharsets.UTF_8).replace("\n", "").getBytes(StandardCharsets.UTF_8);
+            }
+        }
+        return compact;
+    }
+
+    /**
+     * @return the UTF-8 bytes of a constant.
+     */
+    private static byte[] encode(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,152 @@
+package jackanalyzer;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.file.Path;
+import java.util.concurrent.*;
+import java.util.zip.*;
+
+/**
+ * The ZipArchive class writes all the outputs of an --archive run into one zip file, instead of
+ * one small file next to every .jack file.
+ *
+ * How it works:
+ * - The workers write every output into memory, and add() puts the finished entry on a queue.
+ * - A single writer thread takes the entries from the queue and writes them into the ZipOutputStream,
+ *   so the zip file is one sequential stream of large writes, and no worker ever waits for the disk
+ *   unless the queue is full. The bounded queue keeps the memory of a fast parse over a slow disk low.
+ * - BEST_SPEED keeps the writer thread ahead of the parsing workers.
+ * - Entries are written in the order the files are finished, which depends on the jobs.
+ * - If writing fails, the writer drains the queue so no worker blocks, and the failure is thrown
+ *   by the next add() or by close().
+ */
+final class ZipArchive implements OutputArchive {
+    private static final int BUFFER_SIZE = 1 << 16; // 64 KB per write to the file.
+    private static final int QUEUE_SIZE = 64; // Finished entries waiting for the writer.
+    private static final Output END = new Output(null); // Tells the writer that no entry follows.
+
+    private final Path root; // Entry names are relative to it.
+    private final ZipOutputStream zip;
+    private final BlockingQueue<Output> queue = new ArrayBlockingQueue<>(QUEUE_SIZE);
+    private final Thread writer;
+    private volatile IOException failure; // The first write error of the writer thread.
+
+    /**
+     * Creates the archive, replacing an existing file, and starts its writer thread.
+     * @param file of the archive.
+     * @param root the analyzed directory.
+     * @throws IOException if the file cannot be created.
+     */
+    ZipArchive(File file, Path root) throws IOException {
+        this.root = root;
+        this.zip = new ZipOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE));
+        zip.setLevel(Deflater.BEST_SPEED);
+        this.writer = new Thread(this::write, "zip-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public Output entry(File output) {
+        return new Output(OutputArchive.entryName(root, output));
+    }
+
+    @Override
+    public void add(Entry entry) throws IOException {
+        entry.close();
+        throwFailure();
+        try {
+            queue.put((Output) entry);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while adding " + entry.name() + " to the archive");
+        }
+    }
+
+    /**
+     * Waits until the writer has written every added entry, and finishes the zip file.
+     * @throws IOException if writing the archive failed.
+     */
+    @Override
+    public void close() throws IOException {
+        try {
+            queue.put(END);
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while finishing the archive");
+        } finally {
+            try {
+                zip.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        throwFailure();
+    }
+
+    /**
+     * The writer thread: takes the entries from the queue and writes them until END.
+     */
+    private void write() {
+        try {
+            for (Output entry = queue.take(); entry != END; entry = queue.take()) {
+                if (failure != null) {
+                    continue; // Keeps draining, so no worker blocks on a full queue.
+                }
+                try {
+                    zip.putNextEntry(new ZipEntry(entry.name));
+                    entry.bytes.writeTo(zip);
+                    zip.closeEntry();
+                } catch (IOException e) {
+                    failure = e;
+                }
+            }
+        } catch (InterruptedException e) {
+            failure = new InterruptedIOException("The archive writer was interrupted");
+        }
+    }
+
+    private void throwFailure() throws IOException {
+        IOException e = failure;
+        if (e != null) {
+            throw new IOException("Writing the archive failed: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * One output file of the archive, kept in memory until the writer thread has written it.
+     */
+    static final class Output implements Entry {
+        private final String name; // The path of the output, relative to the analyzed directory.
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream(1 << 14);
+        private final WritableByteChannel channel = Channels.newChannel(bytes);
+
+        private Output(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public String name() {
+            return name;
+        }
+
+        @Override
+        public int write(ByteBuffer source) throws IOException {
+            return channel.write(source);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return channel.isOpen();
+        }
+
+        @Override
+        public void close() throws IOException {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package jackanalyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.zip.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CompilationEngineTest {
+    // Sample programs and the folders with their reference parse trees.
+    private static final Map<String, String> SAMPLES = Map.of(
+            "Square", "Squarecompare",
+            "ExpressionLessSquare", "ExpressionLessSquarecompare",
+            "ArrayTest", "ArrayTestcompare"
+    );
+
+    @TempDir
+    File outputDir;
+
+    @Test
+    void testOutputMatchesReferenceFiles() throws IOException {
+        for (Map.Entry<String, String> sample : SAMPLES.entrySet()) {
+            File[] jackFiles = new File(sample.getKey()).listFiles((dir, name) -> name.endsWith(".jack"));
+            assertNotNull(jackFiles, "Missing sample folder " + sample.getKey());
+            for (File jackFile : jackFiles) {
+                String xmlName = jackFile.getName().replace(".jack", ".xml");
+                File actual = new File(outputDir, xmlName);
+                CompilationEngine engine = new CompilationEngine(new JackTokenizer(jackFile), actual);
+                engine.compileClass();
+                engine.close();
+                Path expected = Path.of(sample.getValue(), xmlName);
+                assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(actual.toPath()),
+                        "Output differs from " + expected);
+            }
+        }
+    }
+
+    @Test
+    void testTokenListMatchesReferenceFiles() throws IOException {
+        for (Map.Entry<String, String> sample : SAMPLES.entrySet()) {
+            File[] jackFiles = new File(sample.getKey()).listFiles((dir, name) -> name.endsWith(".jack"));
+            assertNotNull(jackFiles, "Missing sample folder " + sample.getKey());
+            for (File jackFile : jackFiles) {
+                Path expected = Path.of(sample.getValue(), jackFile.getName().replace(".jack", "T.xml"));
+                if (!Files.exists(expected)) {
+                    continue; // Not every sample comes with a token list.
+                }
+                File tree = new File(outputDir, jackFile.getName().replace(".jack", ".xml"));
+                File tokens = new File(outputDir, expected.getFileName().toString());
+                XmlSink xml = new XmlSink(tree);
+                xml.copyTokensTo(new XmlSink(tokens));
+                CompilationEngine engine = new CompilationEngine(new JackTokenizer(jackFile), xml);
+                engine.compileClass();
+                engine.close();
+                assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(tokens.toPath()),
+                        "Token list differs from " + expected);
+                assertArrayEquals(Files.readAllBytes(Path.of(sample.getValue(), tree.getName())),
+                        Files.readAllBytes(tree.toPath()), "Parse tree changed next to the token list of " + jackFile);
+            }
+        }
+    }
+
+    @Test
+    void testSyntaxErrorsReportLineAndColumn() throws IOException {
+        String[][] cases = {
+                // Source, line, column, problem.
+                {"class Bad {\n   function void f() {\n      let x = 1 +;\n   }\n}\n", "3", "18", "expected a term but found ';'"},
+                {"class Bad {\n   field int x\n   field int y;\n}\n", "3", "4", "expected ';' but found 'field'"},
+                {"class Bad {\n   method void f() {\n      return;\n", "3", "13", "expected '}' but found the end of the input"},
+                {"class Bad {\n   function while f() { return; }\n}\n", "2", "13", "expected a return type but found 'while'"},
+                {"", "1", "1", "expected 'class' but found the end of the input"},
+        };
+        for (String[] c : cases) {
+            File jackFile = new File(outputDir, "Bad.jack");
+            Files.writeString(jackFile.toPath(), c[0]);
+            for (boolean streaming : new boolean[]{false, true}) {
+                JackSyntaxException error;
+                try (Reader reader = new FileReader(jackFile)) {
+                    JackTokenizer tokenizer = streaming ? new JackTokenizer(reader) : new JackTokenizer(jackFile);
+                    error = assertThrows(JackSyntaxException.class,
+                            () -> new CompilationEngine(tokenizer, new ParseListener() {}).compileClass(),
+                            "Expected a syntax error in: " + c[0]);
+                }
+                String where = streaming ? " (streaming)" : "";
+                assertEquals(c[3], error.problem(), "Wrong problem for: " + c[0] + where);
+                assertEquals(Integer.parseInt(c[1]), error.line(), "Wrong line for: " + c[0] + where);
+                assertEquals(Integer.parseInt(c[2]), error.column(), "Wrong column for: " + c[0] + where);
+            }
+        }
+    }
+
+    @Test
+    void testDeeplyNestedExpressionsNeedNoRecursion() throws IOException {
+        int depth = 200_000; // Far more than a default thread stack survives with one call per level.
+        StringBuilder source = new StringBuilder("class Deep { function int f() { let x = ");
+        source.append("(".repeat(depth)).append("a[-~g(1, x)]").append(")".repeat(depth)).append(" + 1;");
+        source.append(" return ").append("-".repeat(depth)).append("1; } }");
+        File jackFile = new File(outputDir, "Deep.jack");
+        Files.writeString(jackFile.toPath(), source);
+
+        ParseStatistics statistics = new ParseStatistics();
+        CompilationEngine engine = new CompilationEngine(new JackTokenizer(jackFile), statistics);
+        assertDoesNotThrow(engine::compileClass, "Deep nesting should not overflow the stack");
+        // Every '(' is a term holding an expression, every '-' a term holding a term.
+        assertEquals(2 * depth + 8, statistics.count(GrammarRule.TERM), "Wrong number of terms");
+        assertEquals(depth + 5, statistics.count(GrammarRule.EXPRESSION), "Wrong number of expressions");
+        assertEquals(1, statistics.count(GrammarRule.EXPRESSION_LIST), "Wrong number of expression lists");
+    }
+
+    @Test
+    void testCompactOutputIsReferenceWithoutIndentation() throws IOException {
+        for (Map.Entry<String, String> sample : SAMPLES.entrySet()) {
+            File[] jackFiles = new File(sample.getKey()).listFiles((dir, name) -> name.endsWith(".jack"));
+            assertNotNull(jackFiles, "Missing sample folder " + sample.getKey());
+            for (File jackFile : jackFiles) {
+                String xmlName = jackFile.getName().replace(".jack", ".xml");
+                File actual = new File(outputDir, xmlName);
+                CompilationEngine engine = new CompilationEngine(new JackTokenizer(jackFile), new XmlSink(actual, true));
+                engine.compileClass();
+                engine.close();
+                Path expected = Path.of(sample.getValue(), xmlName);
+                StringBuilder unindented = new StringBuilder();
+                for (String line : Files.readAllLines(expected)) {
+                    unindented.append(line.stripLeading());
+                }
+                assertEquals(unindented.toString(), Files.readString(actual.toPath()),
+                        "Compact output differs from the unindented " + expected);
+            }
+        }
+    }
+
+    @Test
+    void testInMemorySourcesAndOutputs() throws IOException {
+        for (String name : new String[]{"Main", "Square", "SquareGame"}) {
+            String expected = Files.readString(Path.of("Squarecompare", name + ".xml"));
+            byte[] source = Files.readAllBytes(Path.of("Square", name + ".jack"));
+            ByteBuffer direct = ByteBuffer.allocateDirect(source.length + 3).put(new byte[3]).put(source).flip().position(3);
+            List<JackTokenizer> tokenizers = List.of(new JackTokenizer(new String(source, StandardCharsets.UTF_8)),
+                    new JackTokenizer(new StringBuilder(new String(source, StandardCharsets.UTF_8))),
+                    new JackTokenizer(source), new JackTokenizer(direct));
+            for (JackTokenizer tokenizer : tokenizers) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                CompilationEngine engine = new CompilationEngine(tokenizer, out);
+                engine.compileClass();
+                engine.close();
+                assertEquals(expected, out.toString(StandardCharsets.UTF_8), "In-memory output differs from " + name + ".xml");
+            }
+            assertEquals(3, direct.position(), "The source buffer must not be moved");
+        }
+
+        // Long non-ASCII strings, so the 64 KB output buffer ends in the middle of a character.
+        String text = "caf\u00e9 \u20ac \ud83d\ude00 ".repeat(5000);
+        String source = "class Text { function void f() { do Output.printString(\"" + text + "\"); do f(\"" + text + "\"); return; } }";
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        CompilationEngine engine = new CompilationEngine(new JackTokenizer(source), bytes);
+        engine.compileClass();
+        engine.close();
+        StringBuilder chars = new StringBuilder();
+        engine = new CompilationEngine(new JackTokenizer(source.getBytes(StandardCharsets.UTF_8)), XmlSink.appendingTo(chars, false));
+        engine.compileClass();
+        engine.close();
+        assertTrue(chars.indexOf("<stringConstant> " + text + " </stringConstant>") > 0, "The string constant must be kept whole");
+        assertEquals(bytes.toString(StandardCharsets.UTF_8), chars.toString(), "Appended text differs from the encoded output");
+    }
+
+    @Test
+    void testGzipOutputDecompressesToReference() throws IOException {
+        File[] jackFiles = new File("Square").listFiles((dir, name) -> name.endsWith(".jack"));
+        assertNotNull(jackFiles, "Missing sample folder Square");
+        Arrays.sort(jackFiles);
+        ByteArrayOutputStream expectedArchive = new ByteArrayOutputStream();
+        File archiveFile = new File(outputDir, "all.xml.gz");
+        try (GzipArchive archive = new GzipArchive(archiveFile, outputDir.toPath())) {
+            for (File jackFile : jackFiles) {
+                String xmlName = jackFile.getName().replace(".jack", ".xml");
+                byte[] expected = Files.readAllBytes(Path.of("Squarecompare", xmlName));
+                expectedArchive.write(expected);
+
+                File actual = new File(outputDir, xmlName + ".gz");
+                FileChannel channel = FileChannel.open(actual.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+                CompilationEngine engine = new CompilationEngine(new JackTokenizer(jackFile),
+                        new XmlSink(new GzipChannel(channel, xmlName, true)));
+                engine.compileClass();
+                engine.close();
+                assertArrayEquals(expected, gunzip(actual), "Decompressed output differs from " + xmlName);
+
+                GzipArchive.Member member = archive.entry(new File(outputDir, xmlName));
+                assertEquals(xmlName, member.name(), "Members are named relative to the analyzed directory");
+                engine = new CompilationEngine(new JackTokenizer(jackFile), new XmlSink(member));
+                engine.compileClass();
+                engine.close();
+                archive.add(member);
+            }
+        }
+        assertArrayEquals(expectedArchive.toByteArray(), gunzip(archiveFile),
+                "The archive should decompress to all outputs one after the other");
+    }
+
+    @Test
+    void testZipArchiveHoldsEveryOutput() throws IOException {
+        Path input = outputDir.toPath().resolve("Square");
+        Files.createDirectories(input);
+        for (String name : new String[]{"Main.jack", "Square.jack", "SquareGame.jack"}) {
+            Files.copy(Path.of("Square", name), input.resolve(name));
+        }
+        File archiveFile = new File(outputDir, "Square.zip");
+        JackAnalyzer.main(new String[]{"--archive", archiveFile.getPath(), "--tokens", "--jobs", "3", input.toString()});
+
+        try (ZipFile zip = new ZipFile(archiveFile)) {
+            assertEquals(6, zip.size(), "Expected a parse tree and a token list per file");
+            for (String name : new String[]{"Main", "Square", "SquareGame"}) {
+                for (String xmlName : new String[]{name + ".xml", name + "T.xml"}) {
+                    ZipEntry entry = zip.getEntry(xmlName);
+                    assertNotNull(entry, "Missing archive entry " + xmlName);
+                    assertArrayEquals(Files.readAllBytes(Path.of("Squarecompare", xmlName)), zip.getInputStream(entry).readAllBytes(),
+                            "Archive entry differs from " + xmlName);
+                }
+            }
+        }
+        assertFalse(Files.exists(input.resolve("Main.xml")), "Nothing should be written next to the sources");
+    }
+
+    private static byte[] gunzip(File file) throws IOException {
+        try (InputStream in = new GZIPInputStream(new FileInputStream(file))) { // Reads every member, like gunzip.
+            return in.readAllBytes();
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package jackanalyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JackAnalyzerTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void testFailureLeavesNoPartialOutput() throws IOException {
+        // A "file" which cannot be read: it fails before any output is opened.
+        Path unreadable = Files.createDirectory(directory.resolve("Broken.jack"));
+        for (String mode : new String[]{"--tokens", "--stream"}) {
+            AnalyzerOptions options = AnalyzerOptions.parse(new String[]{mode, unreadable.toString()});
+            assertThrows(IOException.class, () -> JackAnalyzer.jackToXML(unreadable.toFile(), options), mode + ": reading should fail");
+            assertFalse(Files.exists(directory.resolve("Broken.xml")), mode + ": no output should be created");
+        }
+
+        // The token list cannot be opened: it fails after the parse tree was opened, which must be deleted again.
+        Path main = Files.copy(Path.of("Square", "Main.jack"), directory.resolve("Main.jack"));
+        Files.createDirectory(directory.resolve("MainT.xml"));
+        Files.createDirectory(directory.resolve("MainT.xml.gz"));
+        for (String[] modes : new String[][]{{"--tokens"}, {"--tokens", "--gzip"}}) {
+            List<String> args = new ArrayList<>(List.of(modes));
+            args.add(main.toString());
+            AnalyzerOptions options = AnalyzerOptions.parse(args.toArray(new String[0]));
+            String mode = String.join(" ", modes);
+            assertThrows(IOException.class, () -> JackAnalyzer.jackToXML(main.toFile(), options), mode + ": the token list cannot be written");
+            assertFalse(Files.exists(directory.resolve("Main.xml")), mode + ": the partial parse tree should be deleted");
+            assertFalse(Files.exists(directory.resolve("Main.xml.gz")), mode + ": the partial parse tree should be deleted");
+        }
+    }
+
+    @Test
+    void testCheckRejectsOutputOptionsAndWatch() {
+        for (String[] output : new String[][]{{"--tokens"}, {"--compact"}, {"--gzip"}, {"--gzip-archive", "a.tar.gz"}, {"--archive", "a.zip"}}) {
+            List<String> args = new ArrayList<>(List.of("--check"));
+            args.addAll(List.of(output));
+            args.add("Square");
+            IllegalArgumentException error = assertThrows(IllegalArgumentException.class, () -> AnalyzerOptions.parse(args.toArray(new String[0])),
+                    output[0] + " must not be ignored by --check");
+            assertTrue(error.getMessage().startsWith("--check cannot be combined"), output[0] + ": " + error.getMessage());
+        }
+        assertThrows(IllegalArgumentException.class, () -> AnalyzerOptions.parse(new String[]{"--check", "--watch", "Square"}),
+                "--watch would never report the result of the check");
+    }
+
+    @Test
+    void testSyntaxErrorFailsTheRunAndDeletesItsOutput() throws Exception {
+        Files.copy(Path.of("Square", "Main.jack"), directory.resolve("Main.jack"));
+        Path broken = directory.resolve("Wrong.jack");
+        Files.writeString(broken, "class Wrong {\n  function void f() {\n    let = 1;\n  }\n}\n");
+        Files.writeString(directory.resolve("Wrong.xml"), "<class>\n</class>\n"); // From an earlier, valid version.
+
+        // In a separate JVM, as the analyzer ends with System.exit(1).
+        Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"), "jackanalyzer.JackAnalyzer", "--jobs", "1", directory.toString())
+                .redirectErrorStream(true).start();
+        String output = new String(process.getInputStream().readAllBytes());
+        assertEquals(1, process.waitFor(), "A syntax error must fail the run: " + output);
+        assertTrue(output.contains("Error: " + broken + ":3:9:"), "The error must name the file, line and column: " + output);
+        assertFalse(Files.exists(directory.resolve("Wrong.xml")), "The output of the broken file must be deleted");
+        assertArrayEquals(Files.readAllBytes(Path.of("Squarecompare", "Main.xml")), Files.readAllBytes(directory.resolve("Main.xml")),
+                "The file before the broken one must still be analyzed");
+    }
+
+    @Test
+    void testIncrementalRunRebuildsOnlyChangedFiles() throws IOException {
+        Path square = copySample("Square", directory.resolve("Square"));
+        run("--incremental", "--jobs", "1", square.toString());
+        for (String name : new String[]{"Main", "Square", "SquareGame"}) {
+            Files.writeString(square.resolve(name + ".xml"), "stale"); // Only visible if the file is skipped.
+        }
+
+        String printed = run("--incremental", "--jobs", "1", square.toString());
+        assertEquals(3, printed.split("Up to date: ", -1).length - 1, "Unchanged files must be skipped: " + printed);
+        assertEquals("stale", Files.readString(square.resolve("Main.xml")), "A skipped output must not be written");
+
+        Files.writeString(square.resolve("Square.jack"), "\n// Edited\n", StandardOpenOption.APPEND);
+        run("--incremental", "--jobs", "1", square.toString());
+        assertReference(square, "Square.xml");
+        assertEquals("stale", Files.readString(square.resolve("Main.xml")), "Only the edited file must be analyzed again");
+
+        run("--incremental", "--tokens", "--jobs", "1", square.toString());
+        assertReference(square, "Main.xml"); // Other options, other outputs: everything is analyzed again.
+        assertReference(square, "MainT.xml");
+
+        Files.move(square.resolve("Main.jack"), square.resolve("Renamed.jack"));
+        run("--incremental", "--tokens", "--jobs", "1", square.resolve("Square.jack").toString()); // Only one file seen.
+        Properties manifest = new Properties();
+        try (Reader reader = Files.newBufferedReader(square.resolve(BuildManifest.FILE_NAME))) {
+            manifest.load(reader);
+        }
+        assertEquals(Set.of("Square.jack", "SquareGame.jack"), manifest.stringPropertyNames(),
+                "The entry of a renamed file must be dropped, the entries of existing files kept");
+    }
+
+    @Test
+    void testParallelRunMatchesReferenceAndReportsInOrder() throws IOException {
+        Path square = copySample("Square", directory.resolve("Square"));
+        String printed = run("--jobs", "3", square.toString());
+        for (String name : new String[]{"Main.xml", "Square.xml", "SquareGame.xml"}) {
+            assertReference(square, name);
+        }
+        int main = printed.indexOf("Processing: Main.jack");
+        int squareClass = printed.indexOf("Processing: Square.jack");
+        int game = printed.indexOf("Processing: SquareGame.jack");
+        assertTrue(main >= 0 && main < squareClass && squareClass < game, "Reports must come in input order: " + printed);
+    }
+
+    @Test
+    void testRecursiveRunHonorsIncludesAndExcludes() throws IOException {
+        String[][] cases = {
+                {"--jobs", "2"}, // Not recursive: the root itself has no .jack file.
+                {"--recursive", "--jobs", "2"},
+                {"--recursive", "--exclude", "ArrayTest", "--jobs", "2"},
+                {"--recursive", "--include", "**/Main.jack", "--jobs", "1"},
+        };
+        String[][] expected = {
+                {},
+                {"ArrayTest/Main.xml", "Square/Main.xml", "Square/Square.xml", "Square/SquareGame.xml"},
+                {"Square/Main.xml", "Square/Square.xml", "Square/SquareGame.xml"},
+                {"ArrayTest/Main.xml", "Square/Main.xml"},
+        };
+        for (int i = 0; i < cases.length; i++) {
+            Path root = Files.createDirectory(directory.resolve("tree" + i));
+            copySample("Square", root.resolve("Square"));
+            copySample("ArrayTest", root.resolve("ArrayTest"));
+            String[] args = Arrays.copyOf(cases[i], cases[i].length + 1);
+            args[args.length - 1] = root.toString();
+            run(args);
+            Set<String> written = new TreeSet<>();
+            try (var files = Files.walk(root)) {
+                files.filter(file -> file.toString().endsWith(".xml"))
+                        .forEach(file -> written.add(root.relativize(file).toString().replace(File.separatorChar, '/')));
+            }
+            assertEquals(new TreeSet<>(List.of(expected[i])), written, "Wrong outputs for " + String.join(" ", cases[i]));
+            for (String output : written) {
+                String sample = output.substring(0, output.indexOf('/'));
+                assertReference(root.resolve(sample), output.substring(sample.length() + 1));
+            }
+        }
+    }
+
+    /**
+     * Copies the .jack files of a sample folder.
+     * @return the copy.
+     */
+    private static Path copySample(String sample, Path target) throws IOException {
+        Files.createDirectories(target);
+        try (var files = Files.list(Path.of(sample))) {
+            for (Path file : (Iterable<Path>) files.filter(file -> file.toString().endsWith(".jack"))::iterator) {
+                Files.copy(file, target.resolve(file.getFileName()));
+            }
+        }
+        return target;
+    }
+
+    private static void assertReference(Path folder, String output) throws IOException {
+        String sample = folder.getFileName().toString();
+        assertArrayEquals(Files.readAllBytes(Path.of(sample + "compare", output)), Files.readAllBytes(folder.resolve(output)),
+                output + " differs from the reference of " + sample);
+    }
+
+    /**
+     * Runs the analyzer like the command line does.
+     * @return what it printed.
+     */
+    private static String run(String... args) throws IOException {
+        PrintStream console = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(printed, true));
+        try {
+            JackAnalyzer.main(args);
+        } finally {
+            System.setOut(console);
+        }
+        return printed.toString();
+    }
+}
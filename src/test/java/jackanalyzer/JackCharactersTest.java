@@ -0,0 +1,47 @@
+package jackanalyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class JackCharactersTest {
+    @Test
+    void testKeywordsAreRecognizedByTheirPerfectHash() {
+        for (int id = 0; id < JackCharacters.KEYWORDS.length; id++) {
+            String keyword = JackCharacters.KEYWORDS[id];
+            char[] buffer = ("  " + keyword + "  ").toCharArray();
+            assertEquals(id, JackCharacters.keyword(buffer, 2, keyword.length()), "Wrong id of " + keyword);
+            assertEquals(keyword, new SymbolPool().symbol(id), "The ids must be those of the SymbolPool");
+        }
+        Set<String> keywords = Set.of(JackCharacters.KEYWORDS);
+        List<String> others = new ArrayList<>(List.of("Class", "classes", "clas", "d", "", "iff", "voids", "constructors",
+                "Main", "x", "size", "draw", "Output", "this_", "nul", "whilE", "123", "returnx"));
+        for (String keyword : keywords) { // Same length and slot as a keyword, but another word.
+            others.add(keyword.substring(0, keyword.length() - 1) + "Z");
+            others.add(keyword.toUpperCase());
+        }
+        for (String word : others) {
+            assertFalse(keywords.contains(word), word + " is a keyword");
+            assertEquals(-1, JackCharacters.keyword(word.toCharArray(), 0, word.length()), word + " is not a keyword");
+        }
+    }
+
+    @Test
+    void testCharacterClassesMatchTheJackGrammar() {
+        for (char c = 0; c < Character.MAX_VALUE; c++) {
+            byte expected;
+            if (Character.isWhitespace(c)) {
+                expected = JackCharacters.WHITESPACE;
+            } else if ("{}()[].,;+-*/&|<>=~".indexOf(c) != -1) {
+                expected = JackCharacters.SYMBOL;
+            } else if (c == '"') {
+                expected = JackCharacters.QUOTE;
+            } else {
+                expected = JackCharacters.WORD;
+            }
+            assertEquals(expected, JackCharacters.classOf(c), "Wrong class of character " + (int) c);
+        }
+    }
+}
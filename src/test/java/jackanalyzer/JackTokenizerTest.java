@@ -4,7 +4,11 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.*;
+import java.util.concurrent.*;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -77,6 +81,10 @@ class JackTokenizerTest {
             // Validate token type
             assertEquals(expectedTokenTypes.get(index), actualTokenType,
                     String.format("Type mismatch at Token %d: Expected '%s', Found '%s'", index + 1, expectedTokenTypes.get(index), actualTokenType));
+            assertTrue(expectedTokens.get(index).contentEquals(tokenizer.tokenText()),
+                    "Token view mismatch at index " + index);
+            assertEquals(TokenType.valueOf(expectedTokenTypes.get(index)), tokenizer.getTokenType(),
+                    "Enum type mismatch at index " + index);
 
             // Check token-specific methods
             switch (actualTokenType) {
@@ -112,4 +120,227 @@ class JackTokenizerTest {
         // Ensure all tokens were processed
         assertEquals(expectedTokens.size(), index, "Not all tokens were processed.");
     }
+
+    @Test
+    void testCommentsSkippedInSinglePass() throws IOException {
+        File file = File.createTempFile("comments", ".jack");
+        try (PrintWriter writer = new PrintWriter(file)) {
+            writer.println("/** API doc");
+            writer.println(" *  spanning // several lines */");
+            writer.println("let s = \"a // not a comment\"; /* inline */ let y=x/2;// tail");
+            writer.print("return;");
+        }
+        JackTokenizer commentTokenizer = new JackTokenizer(file);
+        List<String> expectedTokens = List.of(
+                "let", "s", "=", "\"a // not a comment\"", ";",
+                "let", "y", "=", "x", "/", "2", ";",
+                "return", ";"
+        );
+        List<String> actualTokens = new ArrayList<>();
+        while (commentTokenizer.hasMoreTokens()) {
+            commentTokenizer.advance();
+            actualTokens.add(commentTokenizer.getCurrentToken());
+        }
+        assertEquals(expectedTokens, actualTokens, "Comments must be skipped and strings kept intact.");
+    }
+
+    @Test
+    void testStreamingMatchesWholeFile() throws IOException {
+        for (String name : List.of("Square/Main.jack", "Square/Square.jack", "Square/SquareGame.jack", "ArrayTest/Main.jack")) {
+            File file = new File(name);
+            JackTokenizer whole = new JackTokenizer(file);
+            // A reader handing out one character per call forces the lexer to refill its window at every position.
+            try (Reader reader = new FilterReader(new FileReader(file)) {
+                @Override
+                public int read(char[] buffer, int offset, int length) throws IOException {
+                    return super.read(buffer, offset, Math.min(length, 1));
+                }
+            }) {
+                JackTokenizer streaming = new JackTokenizer(reader);
+                int index = 0;
+                while (whole.hasMoreTokens()) {
+                    assertTrue(streaming.hasMoreTokens(), name + ": streaming ended early at token " + index);
+                    assertEquals(whole.peekType(1), streaming.peekType(1), name + ": lookahead type mismatch at token " + index);
+                    assertEquals(whole.peekSymbol(3), streaming.peekSymbol(3), name + ": lookahead mismatch at token " + index);
+                    whole.advance();
+                    streaming.advance();
+                    assertEquals(whole.getCurrentToken(), streaming.getCurrentToken(), name + ": token mismatch at " + index);
+                    assertEquals(whole.getTokenType(), streaming.getTokenType(), name + ": type mismatch at " + index);
+                    index++;
+                }
+                assertFalse(streaming.hasMoreTokens(), name + ": streaming has extra tokens");
+            }
+        }
+    }
+
+    @Test
+    void testMappedFileMatchesReader() throws IOException {
+        File unicode = File.createTempFile("unicode", ".jack");
+        unicode.deleteOnExit();
+        try (OutputStream out = new FileOutputStream(unicode)) {
+            out.write(("/* " + "padding ".repeat(1500) + "*/\n").getBytes(StandardCharsets.UTF_8)); // Past the first chunk.
+            out.write("class Caf\u00e9 { // \u20ac and \ud83d\ude00\r\n do Output.printString(\"na\u00efve\");\n".getBytes(StandardCharsets.UTF_8));
+            out.write(new byte[]{'"', (byte) 0xC3, '"', ' ', (byte) 0xFF, '\n'}); // Malformed UTF-8.
+            out.write("let x = 1; }".getBytes(StandardCharsets.UTF_8));
+        }
+        for (File file : List.of(testFile, new File("Square/SquareGame.jack"), new File("ArrayTest/Main.jack"), unicode)) {
+            JackTokenizer read = new JackTokenizer(file);
+            JackTokenizer mapped = JackTokenizer.mapped(file);
+            int index = 0;
+            while (read.hasMoreTokens()) {
+                assertTrue(mapped.hasMoreTokens(), file + ": mapped tokens ended early at " + index);
+                read.advance();
+                mapped.advance();
+                assertEquals(read.getCurrentToken(), mapped.getCurrentToken(), file + ": token mismatch at " + index);
+                assertEquals(read.getTokenType(), mapped.getTokenType(), file + ": type mismatch at " + index);
+                assertEquals(read.line(), mapped.line(), file + ": line mismatch at " + index);
+                assertEquals(read.column(), mapped.column(), file + ": column mismatch at " + index);
+                index++;
+            }
+            assertFalse(mapped.hasMoreTokens(), file + ": mapped tokens has extra tokens");
+        }
+    }
+
+    @Test
+    void testTokenCacheMatchesLexing() throws IOException {
+        File cacheFile = File.createTempFile("test", ".jtok");
+        cacheFile.delete();
+        for (int run = 0; run < 2; run++) { // The first run lexes and writes the cache, the second loads it.
+            JackTokenizer lexed = new JackTokenizer(testFile);
+            JackTokenizer cached = new JackTokenizer(testFile, cacheFile);
+            assertTrue(cacheFile.isFile(), "The cache should have been written");
+            cacheFile.setLastModified(1000);
+            int index = 0;
+            while (lexed.hasMoreTokens()) {
+                assertTrue(cached.hasMoreTokens(), "Run " + run + ": cached tokens ended early at " + index);
+                lexed.advance();
+                cached.advance();
+                assertEquals(lexed.getCurrentToken(), cached.getCurrentToken(), "Run " + run + ": token mismatch at " + index);
+                assertEquals(lexed.getTokenType(), cached.getTokenType(), "Run " + run + ": type mismatch at " + index);
+                assertEquals(lexed.line(), cached.line(), "Run " + run + ": line mismatch at " + index);
+                assertEquals(lexed.column(), cached.column(), "Run " + run + ": column mismatch at " + index);
+                index++;
+            }
+            assertFalse(cached.hasMoreTokens(), "Run " + run + ": cached tokens has extra tokens");
+        }
+        assertEquals(1000, cacheFile.lastModified(), "A matching cache should be loaded, not written again");
+
+        try (PrintWriter writer = new PrintWriter(testFile)) {
+            writer.println("class Changed { }");
+        }
+        JackTokenizer changed = new JackTokenizer(testFile, cacheFile);
+        changed.advance();
+        changed.advance();
+        assertEquals("Changed", changed.getCurrentToken(), "A cache of another source must not be used");
+        assertNotEquals(1000, cacheFile.lastModified(), "The cache should be written again for the new source");
+    }
+
+    @Test
+    void testTokenCacheOfFileWithoutTokens() throws IOException {
+        File cacheFile = File.createTempFile("empty", ".jtok");
+        cacheFile.delete();
+        for (String content : new String[]{"", "// Only a comment\n/* and another */\n"}) {
+            try (PrintWriter writer = new PrintWriter(testFile)) {
+                writer.print(content);
+            }
+            for (int run = 0; run < 2; run++) { // The first run writes the cache, the second loads it.
+                JackTokenizer cached = new JackTokenizer(testFile, cacheFile);
+                assertFalse(cached.hasMoreTokens(), "Run " + run + ": a file without tokens has no tokens");
+                assertNull(cached.getCurrentToken(), "Run " + run + ": there is no current token");
+            }
+        }
+        cacheFile.delete();
+    }
+
+    @Test
+    void testDamagedTokenCacheIsIgnored() throws IOException {
+        File cacheFile = File.createTempFile("damaged", ".jtok");
+        cacheFile.delete();
+        new JackTokenizer(testFile, cacheFile);
+        byte[] good = Files.readAllBytes(cacheFile.toPath());
+        byte[] hash = TokenCache.hash(Files.readAllBytes(testFile.toPath()));
+        assertNotNull(TokenCache.read(cacheFile, hash), "The written cache should be valid");
+
+        byte[] badType = good.clone();
+        badType[badType.length - 1] = 42; // The types are the last bytes.
+        Files.write(cacheFile.toPath(), badType);
+        assertNull(TokenCache.read(cacheFile, hash), "A type which is no TokenType must be rejected");
+
+        byte[] badStarts = good.clone();
+        int tokenCount = ByteBuffer.wrap(good, 40, 4).getInt();
+        int stringStarts = 56 + 8 * tokenCount; // After the header, the ids and the offsets.
+        ByteBuffer.wrap(badStarts, stringStarts + 4, 4).putInt(-5);
+        Files.write(cacheFile.toPath(), badStarts);
+        assertNull(TokenCache.read(cacheFile, hash), "String starts which do not increase must be rejected");
+
+        for (int value : new int[]{-1, Integer.MAX_VALUE}) { // Negative, or after the offset of the next token.
+            byte[] badOffsets = good.clone();
+            ByteBuffer.wrap(badOffsets, 56 + 4 * tokenCount, 4).putInt(value); // The first offset, after the ids.
+            Files.write(cacheFile.toPath(), badOffsets);
+            assertNull(TokenCache.read(cacheFile, hash), "Offset " + value + " must be rejected");
+        }
+
+        Files.write(cacheFile.toPath(), badType);
+        JackTokenizer tokenizer = new JackTokenizer(testFile, cacheFile);
+        tokenizer.advance();
+        assertEquals("class", tokenizer.getCurrentToken(), "A damaged cache must be replaced by lexing");
+        assertArrayEquals(good, Files.readAllBytes(cacheFile.toPath()), "A damaged cache must be written again");
+        cacheFile.delete();
+    }
+
+    @Test
+    void testConcurrentCacheWritersDoNotCollide() throws Exception {
+        File directory = Files.createTempDirectory("cache").toFile();
+        File cacheFile = new File(directory, "test.jtok");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<JackTokenizer>> results = new ArrayList<>();
+            for (int i = 0; i < 16; i++) {
+                results.add(executor.submit(() -> {
+                    cacheFile.delete(); // A miss for every writer, so they all write the cache at once.
+                    return new JackTokenizer(testFile, cacheFile);
+                }));
+            }
+            for (Future<JackTokenizer> result : results) {
+                result.get(); // Throws if a writer failed.
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertArrayEquals(new String[]{"test.jtok"}, directory.list(), "No temporary file may be left behind");
+        assertNotNull(TokenCache.read(cacheFile, TokenCache.hash(Files.readAllBytes(testFile.toPath()))), "The cache must be complete");
+        cacheFile.delete();
+        directory.delete();
+    }
+
+    @Test
+    void testUnwritableCacheKeepsTheLexedTokens() throws IOException {
+        File cacheFile = new File(Files.createTempDirectory("cache").toFile(), "missing/test.jtok"); // Its folder does not exist.
+        JackTokenizer lexed = new JackTokenizer(testFile);
+        JackTokenizer cached = new JackTokenizer(testFile, cacheFile);
+        assertNotNull(cached.cacheFailure(), "The failed cache write should be kept");
+        assertFalse(cacheFile.exists(), "No cache can have been written");
+        while (lexed.hasMoreTokens()) {
+            assertTrue(cached.hasMoreTokens(), "The lexed tokens must still be there");
+            lexed.advance();
+            cached.advance();
+            assertEquals(lexed.getCurrentToken(), cached.getCurrentToken(), "Token mismatch");
+        }
+        assertFalse(cached.hasMoreTokens(), "Extra tokens");
+    }
+
+    @Test
+    void testTooLargeFileIsAnIOException() throws IOException {
+        File huge = File.createTempFile("huge", ".jack");
+        huge.deleteOnExit();
+        try (RandomAccessFile file = new RandomAccessFile(huge, "rw")) {
+            file.setLength(3L << 30); // Sparse, nothing is written; checked before anything is read.
+        }
+        try {
+            IOException error = assertThrows(IOException.class, () -> new JackTokenizer(huge), "A 3 GB file cannot be held in a char array");
+            assertTrue(error.getMessage().contains("too large"), error.getMessage());
+        } finally {
+            huge.delete();
+        }
+    }
 }
@@ -0,0 +1,87 @@
+package jackanalyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParseListenerTest {
+    @TempDir
+    File tempDir;
+
+    @Test
+    void testStatisticsCountRulesAndTokens() throws IOException {
+        Path source = tempDir.toPath().resolve("Main.jack");
+        Files.writeString(source, """
+                class Main {
+                   field int x, y;
+                   function void main() {
+                      var int i;
+                      let i = 0;
+                      while (i < 10) { let i = i + 1; }
+                      do Output.printString("done");
+                      return;
+                   }
+                }
+                """);
+        ParseStatistics statistics = new ParseStatistics();
+        new CompilationEngine(new JackTokenizer(source.toFile()), statistics).compileClass();
+
+        assertEquals(1, statistics.count(GrammarRule.CLASS), "Expected one class");
+        assertEquals(1, statistics.count(GrammarRule.CLASS_VAR_DEC), "Expected one field declaration");
+        assertEquals(2, statistics.count(GrammarRule.LET_STATEMENT), "Expected two let statements");
+        assertEquals(1, statistics.count(GrammarRule.WHILE_STATEMENT), "Expected one while statement");
+        assertEquals(1, statistics.count(TokenType.STRING_CONST), "Expected one string constant");
+        assertEquals(3, statistics.count(TokenType.INT_CONST), "Expected three integer constants");
+
+        ParseStatistics direct = new ParseStatistics();
+        new CompilationEngine(new JackTokenizer(source.toFile()), direct).compileClass();
+        ParseStatistics walked = new ParseStatistics();
+        SyntaxTree.parse(new JackTokenizer(source.toFile())).walk(walked);
+        assertEquals(direct.tokenCount(), walked.tokenCount(), "A tree walk should report the same tokens");
+        assertEquals(direct.maxDepth(), walked.maxDepth(), "A tree walk should report the same nesting");
+    }
+
+    @Test
+    void testEventsAreNestedAndCoverEveryToken() throws IOException {
+        File jackFile = new File("Square/SquareGame.jack");
+        Deque<GrammarRule> open = new ArrayDeque<>();
+        int[] terminals = {0};
+        new CompilationEngine(new JackTokenizer(jackFile), new ParseListener() {
+            @Override
+            public void enter(GrammarRule rule) {
+                open.push(rule);
+            }
+
+            @Override
+            public void exit(GrammarRule rule) {
+                assertEquals(open.pop(), rule, "Rules must be exited in reverse order of entering");
+            }
+
+            @Override
+            public void symbol(char symbol) {
+                assertFalse(open.isEmpty(), "Symbols belong to a rule");
+                terminals[0]++;
+            }
+
+            @Override
+            public void terminal(TokenType type, char[] text, int start, int length) {
+                assertFalse(open.isEmpty(), "Tokens belong to a rule");
+                terminals[0]++;
+            }
+        }).compileClass();
+        assertTrue(open.isEmpty(), "Every rule should be exited");
+
+        JackTokenizer tokenizer = new JackTokenizer(jackFile);
+        int tokens = 0;
+        while (tokenizer.hasMoreTokens()) {
+            tokenizer.advance();
+            tokens++;
+        }
+        assertEquals(tokens, terminals[0], "Every token should be reported once");
+    }
+}
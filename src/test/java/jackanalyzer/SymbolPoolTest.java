@@ -0,0 +1,82 @@
+package jackanalyzer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SymbolPoolTest {
+    @Test
+    void testKeywordsHaveTheirConstants() {
+        SymbolPool pool = new SymbolPool();
+        assertEquals(SymbolPool.CLASS, intern(pool, "class"), "Wrong id of 'class'");
+        assertEquals(SymbolPool.LET, intern(pool, "let"), "Wrong id of 'let'");
+        assertEquals(SymbolPool.RETURN, intern(pool, "return"), "Wrong id of 'return'");
+        assertEquals("while", pool.symbol(SymbolPool.WHILE), "Wrong keyword of WHILE");
+        assertTrue(SymbolPool.isKeyword(intern(pool, "this")), "'this' is a keyword");
+        assertFalse(SymbolPool.isKeyword(intern(pool, "These")), "'These' is a name");
+
+        int output = intern(pool, "Output");
+        char[] buffer = "do Output.printString".toCharArray();
+        assertEquals(output, pool.intern(buffer, 3, 6), "The same name must get the same id");
+        assertSame(pool.symbol(output), pool.symbol(pool.intern(buffer, 3, 6)), "A name must exist as one String");
+        assertNotEquals(output, intern(pool, "Outpu"), "A prefix is another name");
+    }
+
+    @Test
+    void testConcurrentInterningAgreesOnIds() throws Exception {
+        SymbolPool pool = new SymbolPool();
+        int names = 20_000; // Enough for every stripe to grow several times.
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            List<Future<int[]>> results = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t;
+                results.add(executor.submit(() -> {
+                    int[] ids = new int[names];
+                    for (int i = 0; i < names; i++) {
+                        int name = (i * 7 + offset * 997) % names; // Every thread in its own order.
+                        ids[name] = intern(pool, "name" + name);
+                    }
+                    return ids;
+                }));
+            }
+            int[] first = results.get(0).get();
+            for (Future<int[]> result : results) {
+                assertArrayEquals(first, result.get(), "Every thread must see the same id for a name");
+            }
+            Set<Integer> distinct = new HashSet<>();
+            for (int i = 0; i < names; i++) {
+                assertEquals("name" + i, pool.symbol(first[i]), "Wrong name of id " + first[i]);
+                distinct.add(first[i]);
+            }
+            assertEquals(names, distinct.size(), "Different names must get different ids");
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    void testTokenizersShareOnlyTheirOwnPool() {
+        SymbolPool run = new SymbolPool();
+        JackTokenizer first = new JackTokenizer("class Main { }", run);
+        JackTokenizer second = new JackTokenizer("class Main { }", run);
+        JackTokenizer alone = new JackTokenizer("class Main { }");
+        for (JackTokenizer tokenizer : List.of(first, second, alone)) {
+            tokenizer.advance();
+            tokenizer.advance();
+            assertEquals("Main", tokenizer.getCurrentToken(), "Wrong second token");
+        }
+        assertEquals(first.symbolId(), second.symbolId(), "Tokenizers of one pool must agree on ids");
+        assertSame(first.getCurrentToken(), second.getCurrentToken(), "A name must exist once per pool");
+        assertNotSame(first.getCurrentToken(), alone.getCurrentToken(), "A tokenizer without a pool must not use another one");
+        assertEquals(first.symbolId(), intern(run, "Main"), "The name must have been interned in the given pool");
+    }
+
+    private static int intern(SymbolPool pool, String name) {
+        return pool.intern(name.toCharArray(), 0, name.length());
+    }
+}
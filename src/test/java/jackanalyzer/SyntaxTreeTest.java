@@ -0,0 +1,62 @@
+package jackanalyzer;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.*;
+import java.nio.file.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SyntaxTreeTest {
+    @TempDir
+    File outputDir;
+
+    @Test
+    void testWalkWritesReferenceXml() throws IOException {
+        String[][] samples = {{"Square", "Squarecompare"}, {"ExpressionLessSquare", "ExpressionLessSquarecompare"},
+                {"ArrayTest", "ArrayTestcompare"}};
+        for (String[] sample : samples) {
+            File[] jackFiles = new File(sample[0]).listFiles((dir, name) -> name.endsWith(".jack"));
+            assertNotNull(jackFiles, "Missing sample folder " + sample[0]);
+            for (File jackFile : jackFiles) {
+                SyntaxTree tree = SyntaxTree.parse(new JackTokenizer(jackFile));
+                String xmlName = jackFile.getName().replace(".jack", ".xml");
+                // The same tree, written twice, must give the reference output both times.
+                for (int round = 0; round < 2; round++) {
+                    File actual = new File(outputDir, round + xmlName);
+                    try (XmlSink xml = new XmlSink(actual)) {
+                        tree.walk(xml);
+                    }
+                    Path expected = Path.of(sample[1], xmlName);
+                    assertArrayEquals(Files.readAllBytes(expected), Files.readAllBytes(actual.toPath()),
+                            "Walked output differs from " + expected);
+                }
+            }
+        }
+    }
+
+    @Test
+    void testTreeStructure() throws IOException {
+        Path source = outputDir.toPath().resolve("Main.jack");
+        Files.writeString(source, "class Main { function void main() { let x = a[1] + 2; return; } }");
+        SyntaxTree tree = SyntaxTree.parse(new JackTokenizer(source.toFile()));
+
+        int root = tree.root();
+        assertEquals(GrammarRule.CLASS, tree.rule(root), "The root should be the class");
+        int keyword = tree.firstChild(root);
+        assertFalse(tree.isRule(keyword), "The first child should be a token");
+        assertEquals(TokenType.KEYWORD, tree.tokenType(keyword), "Expected the 'class' keyword");
+        assertEquals("class", tree.tokenText(keyword), "Wrong token text");
+        assertEquals("Main", tree.tokenText(tree.nextSibling(keyword)), "Wrong class name");
+
+        int subroutines = 0;
+        for (int child = tree.firstChild(root); child != -1; child = tree.nextSibling(child)) {
+            if (tree.isRule(child) && tree.rule(child) == GrammarRule.SUBROUTINE_DEC) {
+                subroutines++;
+            }
+        }
+        assertEquals(1, subroutines, "Expected one subroutine declaration");
+        assertEquals(-1, tree.nextSibling(root), "A class has no siblings");
+    }
+}
@@ -0,0 +1,97 @@
+package jackanalyzer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.*;
+import java.nio.file.*;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class VectorScanTest {
+    // Pieces of Jack source around the delimiters the vector scan looks for.
+    private static final String[] PIECES = {
+            "/* short */", "/** API doc\n *  with * stars ** and / slashes\n */", "/***/", "/* unterminated",
+            "// line comment\n", "// comment at the end", "// \"quoted\" /* not a block */\r\n",
+            "\"string\"", "\"\"", "\"with // and /* inside\"", "\"unterminated\n", "\"carriage\r",
+            "let", "x", "Output", "123", "=", "*", "/", ";", "{", "}", " ", "\n", "\t", "\r\n"
+    };
+
+    @BeforeEach
+    void requireVectorApi() {
+        assumeTrue(VectorScan.available(), "Run with --add-modules jdk.incubator.vector");
+    }
+
+    @AfterEach
+    void disable() {
+        VectorScan.disable();
+    }
+
+    @Test
+    void testSamplesTokenizeAsWithScalarScan() throws IOException {
+        for (String name : List.of("Square/Main.jack", "Square/Square.jack", "Square/SquareGame.jack", "ArrayTest/Main.jack")) {
+            assertSameTokens(name, Files.readString(Path.of(name)));
+        }
+    }
+
+    @Test
+    void testRandomSourcesTokenizeAsWithScalarScan() throws IOException {
+        Random random = new Random(42);
+        for (int n = 0; n < 500; n++) {
+            StringBuilder source = new StringBuilder();
+            int pieces = random.nextInt(40);
+            for (int i = 0; i < pieces; i++) {
+                String piece = PIECES[random.nextInt(PIECES.length)];
+                if (piece.startsWith("/*") && random.nextBoolean()) {
+                    // Long comments, longer than a vector, with the end at every possible lane.
+                    piece = "/*" + "x".repeat(random.nextInt(200)) + "*/";
+                }
+                source.append(piece).append(random.nextBoolean() ? " " : "");
+            }
+            assertSameTokens("source " + n, source.toString());
+        }
+    }
+
+    /**
+     * Tokenizes the source with the scalar and the vector scan, whole and streaming, and compares every token.
+     */
+    private static void assertSameTokens(String name, String source) throws IOException {
+        VectorScan.disable();
+        List<String> expected = tokens(source, false);
+        List<String> expectedStreaming = tokens(source, true);
+        assertEquals(expected, expectedStreaming, name + ": the scalar scan differs between whole and streaming");
+        assertTrue(VectorScan.enable(), "The vector scan should be available");
+        assertEquals(expected, tokens(source, false), name + ": the vector scan differs from the scalar scan");
+        assertEquals(expected, tokens(source, true), name + ": the streaming vector scan differs from the scalar scan");
+    }
+
+    /**
+     * @return every token as "type text line:column".
+     */
+    private static List<String> tokens(String source, boolean streaming) throws IOException {
+        JackTokenizer tokenizer;
+        if (streaming) {
+            // Three characters per read, so the window is refilled in the middle of comments and strings.
+            tokenizer = new JackTokenizer(new FilterReader(new StringReader(source)) {
+                @Override
+                public int read(char[] buffer, int offset, int length) throws IOException {
+                    return super.read(buffer, offset, Math.min(length, 3));
+                }
+            });
+        } else {
+            File file = File.createTempFile("vector", ".jack");
+            file.deleteOnExit();
+            Files.writeString(file.toPath(), source);
+            tokenizer = new JackTokenizer(file);
+        }
+        List<String> tokens = new ArrayList<>();
+        while (tokenizer.hasMoreTokens()) {
+            tokenizer.advance();
+            tokens.add(tokenizer.getTokenType() + " " + tokenizer.getCurrentToken() + " " + tokenizer.line() + ":" + tokenizer.column());
+        }
+        return tokens;
+    }
+}